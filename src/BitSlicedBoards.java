@@ -0,0 +1,328 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Simulates many standard 5x5 normal boards at once, for estimating difficulty by playing huge
+ * numbers of random press sequences. The boards are bit-sliced: each of the 25 cells has a lane of
+ * longs, and bit i of word w of a lane is that cell of board w * 64 + i. Pressing a cell on every
+ * board is then five word-wide XORs per 64 boards, and finding the solved boards is an OR of the
+ * 25 lanes, where a single Board would update 25 Swing buttons per press.
+ * <p>
+ * Operations over whole lanes are done by a LaneKernel. Where the optional vector kernel in
+ * src/vector has been compiled and the jdk.incubator.vector module is added, it is used to
+ * process several words per instruction; otherwise plain loops are used.
+ * <p>
+ * Not thread safe; use one per thread.
+ *
+ * @see PackedBoard
+ */
+public class BitSlicedBoards {
+    /**
+     * Number of boards held by each word of a lane
+     */
+    public static final int BOARDS_PER_WORD = Long.SIZE;
+
+    /**
+     * Cells toggled by pressing each cell
+     */
+    private static final int[][] TOGGLED = new int[PackedBoard.CELLS][];
+
+    static {
+        for (int cell = 0; cell < PackedBoard.CELLS; cell++) {
+            int mask = PackedBoard.getToggleMask(cell);
+            TOGGLED[cell] = new int[Integer.bitCount(mask)];
+            for (int i = 0; mask != 0; mask &= mask - 1) {
+                TOGGLED[cell][i++] = Integer.numberOfTrailingZeros(mask);
+            }
+        }
+    }
+
+    private static LaneKernel defaultKernel;
+
+    private final int count;
+    private final int words;
+    /**
+     * Bits of the last word of each lane which hold a board
+     */
+    private final long lastWordMask;
+    private final long[][] lanes;
+    private final long[] scratch;
+    /**
+     * Boards pressing each cell, for pressEach
+     */
+    private final long[] cellMasks = new long[PackedBoard.CELLS];
+    private final LaneKernel kernel;
+
+    /**
+     * Operations over whole lanes. Every array passed has at least length entries.
+     */
+    interface LaneKernel {
+        /**
+         * Flip every bit of the first length words of target
+         */
+        void invert(long[] target, int length);
+
+        /**
+         * XOR source into target
+         */
+        void xor(long[] target, long[] source, int length);
+
+        /**
+         * OR source into target
+         */
+        void or(long[] target, long[] source, int length);
+    }
+
+    /**
+     * Lane operations as plain loops, which the JIT may still vectorise
+     */
+    static final class ScalarKernel implements LaneKernel {
+        @Override
+        public void invert(long[] target, int length) {
+            for (int i = 0; i < length; i++) {
+                target[i] = ~target[i];
+            }
+        }
+
+        @Override
+        public void xor(long[] target, long[] source, int length) {
+            for (int i = 0; i < length; i++) {
+                target[i] ^= source[i];
+            }
+        }
+
+        @Override
+        public void or(long[] target, long[] source, int length) {
+            for (int i = 0; i < length; i++) {
+                target[i] |= source[i];
+            }
+        }
+    }
+
+    /**
+     * Create unlit boards using the fastest kernel available
+     *
+     * @param count Number of boards
+     */
+    public BitSlicedBoards(int count) {
+        this(count, getDefaultKernel());
+    }
+
+    /**
+     * Create unlit boards using the given kernel
+     *
+     * @param count  Number of boards
+     * @param kernel Lane operations to use
+     */
+    BitSlicedBoards(int count, LaneKernel kernel) {
+        if (count < 1) {
+            throw new IllegalArgumentException("There must be at least one board");
+        }
+        this.count = count;
+        this.words = (count + BOARDS_PER_WORD - 1) / BOARDS_PER_WORD;
+        this.lastWordMask = count % BOARDS_PER_WORD == 0 ? -1L : (1L << count % BOARDS_PER_WORD) - 1;
+        this.lanes = new long[PackedBoard.CELLS][words];
+        this.scratch = new long[words];
+        this.kernel = kernel;
+    }
+
+    /**
+     * Retrieve the vector kernel where it has been compiled and its module is present, otherwise
+     * the scalar kernel
+     *
+     * @return LaneKernel shared by every simulator
+     */
+    static synchronized LaneKernel getDefaultKernel() {
+        if (defaultKernel == null) {
+            try {
+                defaultKernel = (LaneKernel) Class.forName("VectorLaneKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | ClassCastException error) {
+                // Not compiled, or run without --add-modules jdk.incubator.vector
+                defaultKernel = new ScalarKernel();
+            }
+        }
+        return defaultKernel;
+    }
+
+    /**
+     * Determines whether the vector kernel is being used
+     *
+     * @return boolean indicating if lanes are processed with jdk.incubator.vector
+     */
+    public boolean isVectorised() {
+        return !(kernel instanceof ScalarKernel);
+    }
+
+    /**
+     * Retrieve the number of boards
+     *
+     * @return int number of boards
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Turn every light of every board off
+     */
+    public void clear() {
+        for (long[] lane : lanes) {
+            Arrays.fill(lane, 0);
+        }
+    }
+
+    /**
+     * Set the lights of one board
+     *
+     * @param board  Index of the board
+     * @param packed The lights, laid out as in PackedBoard
+     */
+    public void setBoard(int board, int packed) {
+        int word = board / BOARDS_PER_WORD;
+        long bit = 1L << board;
+        for (int cell = 0; cell < PackedBoard.CELLS; cell++) {
+            if ((packed & (1 << cell)) != 0) {
+                lanes[cell][word] |= bit;
+            } else {
+                lanes[cell][word] &= ~bit;
+            }
+        }
+    }
+
+    /**
+     * Retrieve the lights of one board
+     *
+     * @param board Index of the board
+     * @return int lights laid out as in PackedBoard
+     */
+    public int getBoard(int board) {
+        int word = board / BOARDS_PER_WORD;
+        int packed = 0;
+        for (int cell = 0; cell < PackedBoard.CELLS; cell++) {
+            packed |= (int) ((lanes[cell][word] >>> board) & 1) << cell;
+        }
+        return packed;
+    }
+
+    /**
+     * Press the same cell on every board
+     *
+     * @param cell Index of the cell, from PackedBoard.index
+     */
+    public void press(int cell) {
+        for (int toggled : TOGGLED[cell]) {
+            kernel.invert(lanes[toggled], words);
+        }
+    }
+
+    /**
+     * Press the same cell on some of the boards
+     *
+     * @param cell     Index of the cell, from PackedBoard.index
+     * @param selected Which boards to press, one bit per board laid out like the lanes
+     */
+    public void press(int cell, long[] selected) {
+        for (int toggled : TOGGLED[cell]) {
+            kernel.xor(lanes[toggled], selected, words);
+        }
+    }
+
+    /**
+     * Press one cell on each board, where each board may press a different cell. The presses are
+     * gathered into a mask of boards for each cell, so each word of the lanes is updated once.
+     *
+     * @param cells Index of the cell to press on each board, or -1 to leave a board alone
+     */
+    public void pressEach(int[] cells) {
+        for (int word = 0; word < words; word++) {
+            Arrays.fill(cellMasks, 0);
+            int first = word * BOARDS_PER_WORD;
+            int last = Math.min(count, first + BOARDS_PER_WORD);
+            for (int board = first; board < last; board++) {
+                if (cells[board] >= 0) {
+                    cellMasks[cells[board]] |= 1L << board;
+                }
+            }
+            for (int cell = 0; cell < PackedBoard.CELLS; cell++) {
+                long mask = cellMasks[cell];
+                if (mask != 0) {
+                    for (int toggled : TOGGLED[cell]) {
+                        lanes[toggled][word] ^= mask;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find which boards are solved
+     *
+     * @param solved Filled with one bit per board, laid out like the lanes, set where every light
+     *               is off. Must have a word for every 64 boards.
+     */
+    public void solvedMask(long[] solved) {
+        System.arraycopy(lanes[0], 0, scratch, 0, words);
+        for (int cell = 1; cell < PackedBoard.CELLS; cell++) {
+            kernel.or(scratch, lanes[cell], words);
+        }
+        for (int word = 0; word < words; word++) {
+            solved[word] = ~scratch[word];
+        }
+        solved[words - 1] &= lastWordMask;
+    }
+
+    /**
+     * Count the boards which are solved
+     *
+     * @return int number of boards with every light off
+     */
+    public int countSolved() {
+        this.solvedMask(scratch);
+        int solved = 0;
+        for (int word = 0; word < words; word++) {
+            solved += Long.bitCount(scratch[word]);
+        }
+        return solved;
+    }
+
+    /**
+     * Determines whether one board is solved
+     *
+     * @param board Index of the board
+     * @return boolean indicating if every light of the board is off
+     */
+    public boolean isSolved(int board) {
+        return this.getBoard(board) == 0;
+    }
+
+    /**
+     * Measure how fast random presses are simulated, with and without the vector kernel
+     *
+     * @param args Optionally the number of boards, then the number of presses
+     */
+    public static void main(String[] args) {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int presses = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Random random = new Random(1);
+        LaneKernel[] kernels = getDefaultKernel() instanceof ScalarKernel
+                ? new LaneKernel[]{new ScalarKernel()}
+                : new LaneKernel[]{new ScalarKernel(), getDefaultKernel()};
+        for (LaneKernel kernel : kernels) {
+            BitSlicedBoards simulator = new BitSlicedBoards(boards, kernel);
+            // Warm up, then time
+            for (int round = 0; round < 2; round++) {
+                simulator.clear();
+                long start = System.nanoTime();
+                for (int press = 0; press < presses; press++) {
+                    simulator.press(random.nextInt(PackedBoard.CELLS));
+                }
+                int solved = simulator.countSolved();
+                long nanos = System.nanoTime() - start;
+                if (round == 1) {
+                    System.out.printf("%s: %.0f million board presses/s (%d solved)%n",
+                            kernel.getClass().getSimpleName(), (double) boards * presses / nanos * 1000, solved);
+                }
+            }
+        }
+    }
+}
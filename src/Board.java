@@ -1,14 +1,20 @@
 import javax.swing.*;
 import java.awt.*;
+import java.util.Arrays;
 
 /**
  * Represents a game board. It is used to represent boards that are being edited, boards in play and
  * boards across all variants. Whether or not it is a coloured board is determined by the type of
  * buttons which are passed in.
+ * <p>
+ * The lights themselves are held in a headless BoardState; the board applies presses to it and
+ * the buttons only render it. Boards larger than MAX_BUTTON_SIZE in either direction are instead
+ * displayed by a single BoardCanvas, as a grid of that many buttons is too slow to use.
  */
 public class Board {
     /**
-     * The number of buttons wide/high the board is.
+     * The number of buttons wide/high a standard board is. Boards loaded from levels may declare
+     * their own size.
      */
     protected final static int BOARD_SIZE = 5;
     /**
@@ -18,12 +24,63 @@ public class Board {
 
     private final static int BOARD_HEIGHT = 300;
     private final static int BOARD_WIDTH = 300;
+    /**
+     * The most cells wide/high a board displayed with buttons can be
+     */
+    public final static int MAX_BUTTON_SIZE = 20;
+    /**
+     * The most pixels wide/high a painted board grows to so that each cell gets at least a pixel
+     */
+    private final static int MAX_PAINTED_SIZE = 600;
+    /**
+     * The most changed cells displayed run by run when a batch ends. Larger batches repaint the
+     * area covering every changed cell in one go.
+     */
+    private final static int MAX_DIRTY_CELLS = 64;
 
+    /**
+     * The buttons displaying each cell, or null where the board is painted by the canvas
+     */
     private final Button[][] buttons;
+    private final BoardCanvas canvas;
+    private final BoardState state;
+    /**
+     * Activations which can be undone or redone
+     */
+    private final MoveHistory history = new MoveHistory();
+    /**
+     * Scratch list of the cells altered by a press, for re-rendering them
+     */
+    private final int[] toggled;
+    private final int width;
+    private final int height;
     private final JPanel board;
     private boolean shouldUpdateSiblings;
+    private boolean enabled = true;
     private BoardConsumer consumer;
 
+    /**
+     * How many batches are open. Cells are only displayed once the outermost batch ends.
+     */
+    private int batchDepth = 0;
+    /**
+     * Whether any activation has happened in the open batch
+     */
+    private boolean batchActivated = false;
+    /**
+     * Cells changed in the open batch, as row * width + column, until more than MAX_DIRTY_CELLS
+     * have changed. A cell may be listed more than once.
+     */
+    private final int[] dirtyCells = new int[MAX_DIRTY_CELLS];
+    private int dirtyCount = 0;
+    /**
+     * Bounds of the cells changed in the open batch. minRow is greater than maxRow when none have.
+     */
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = -1;
+    private int minColumn = Integer.MAX_VALUE;
+    private int maxColumn = -1;
+
     /**
      * Creates a new board with a standard arrangement of unlit normal buttons.
      *
@@ -32,12 +89,13 @@ public class Board {
      *                       For actual games, this is always true. When editing the board, it is not.
      */
     public Board(BoardConsumer consumer, boolean updateSiblings) {
-        this(consumer, updateSiblings, null);
+        this(consumer, updateSiblings, (Button[][]) null);
     }
 
     /**
      * Create a new board with the given buttons. This allows pre-set configurations (such as levels)
-     * to be passed. If initialButtons is null, a grid of NormalButtons is generated.
+     * to be passed. If initialButtons is null, a standard size grid of NormalButtons is generated.
+     * Otherwise the size of the board is taken from the rectangular initialButtons array.
      *
      * @param consumer       - The Board consumer which has created this board. Either Game or BoardEditor.
      * @param updateSiblings - Whether or not adjacent lights should also be altered on click.
@@ -45,13 +103,39 @@ public class Board {
      * @param initialButtons - The Buttons to initially populate the board with.
      */
     public Board(BoardConsumer consumer, boolean updateSiblings, Button[][] initialButtons) {
+        this(consumer, updateSiblings, initialButtons != null
+                ? initialButtons
+                : createButtons(new NormalBoardState(BOARD_SIZE, BOARD_SIZE)), null);
+    }
+
+    /**
+     * Create a board displayed either by the given buttons or, where there are none, by a canvas
+     * painting the given state.
+     */
+    private Board(BoardConsumer consumer, boolean updateSiblings, Button[][] initialButtons, BoardState initialState) {
         this.shouldUpdateSiblings = updateSiblings;
         this.consumer = consumer;
+        if (initialButtons != null) {
+            this.height = initialButtons.length;
+            this.width = initialButtons[0].length;
+        } else {
+            this.height = initialState.getHeight();
+            this.width = initialState.getWidth();
+        }
+        this.buttons = initialButtons;
 
-        // Call JPanel & set initial properties
-        this.board = new JPanel(new GridLayout(BOARD_SIZE, BOARD_SIZE, BOARD_GAP, BOARD_GAP));
-        // https://docs.oracle.com/javase/tutorial/uiswing/layout/grid.html
-        this.board.setSize(BOARD_WIDTH, BOARD_HEIGHT);
+        if (buttons != null) {
+            // Call JPanel & set initial properties
+            this.board = new JPanel(new GridLayout(height, width, BOARD_GAP, BOARD_GAP));
+            // https://docs.oracle.com/javase/tutorial/uiswing/layout/grid.html
+            this.board.setSize(BOARD_WIDTH, BOARD_HEIGHT);
+        } else {
+            // Give every cell at least a pixel, within reason
+            this.board = new JPanel(new BorderLayout());
+            this.board.setSize(Math.min(MAX_PAINTED_SIZE, Math.max(BOARD_WIDTH, width)),
+                    Math.min(MAX_PAINTED_SIZE, Math.max(BOARD_HEIGHT, height)));
+            this.board.setPreferredSize(this.board.getSize());
+        }
         this.board.setMaximumSize(this.board.getSize());
         this.board.setBackground(MainFrame.SECONDARY_BACKGROUND);
 
@@ -62,96 +146,416 @@ public class Board {
             consumer.getPanel().add(this.board);
         }
 
-        if (initialButtons != null) {
-            buttons = initialButtons;
+        if (buttons == null) {
+            state = initialState.copy();
+            toggled = new int[state.getToggleMasks().getMaxToggled()];
+            canvas = new BoardCanvas(this);
+            this.board.add(canvas, BorderLayout.CENTER);
+            return;
+        }
+        canvas = null;
+
+        // The type of buttons determines the variant of the underlying state
+        Topology topology = initialState != null ? initialState.getTopology() : Topology.STANDARD;
+        if (buttons[0][0] instanceof ColoredButton) {
+            state = new ColoredBoardState(width, height, topology);
         } else {
-            // Generate some buttons - no initial was provided
-            buttons = new NormalButton[BOARD_SIZE][BOARD_SIZE];
-            for (int row = 0; row < BOARD_SIZE; row++) {
-                for (int column = 0; column < BOARD_SIZE; column++) {
-                    buttons[row][column] = new NormalButton(this, row, column);
-                }
-            }
+            state = new NormalBoardState(width, height, topology);
         }
+        toggled = new int[state.getToggleMasks().getMaxToggled()];
 
-        // Construct display all buttons and ensure they hold the correct board
-        for (int row = 0; row < BOARD_SIZE; row++) {
-            for (int column = 0; column < BOARD_SIZE; column++) {
+        // Construct display all buttons, ensure they hold the correct board and seed the state
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
                 this.board.add(buttons[row][column]);
                 buttons[row][column].setBoard(this);
+                state.setCell(row, column, buttons[row][column].getState());
             }
         }
     }
 
+    /**
+     * Create a new board displaying the given lights. Boards up to MAX_BUTTON_SIZE in each
+     * direction get a button for each cell - ColoredButtons for coloured states and NormalButtons
+     * for normal states. Larger boards are painted by a BoardCanvas.
+     *
+     * @param consumer       - The Board consumer which has created this board. Either Game or BoardEditor.
+     * @param updateSiblings - Whether or not adjacent lights should also be altered on click.
+     *                       For actual games, this is always true. When editing the board, it is not.
+     * @param initialState   - The lights to initially display, such as from Level.toBoardState.
+     */
+    public Board(BoardConsumer consumer, boolean updateSiblings, BoardState initialState) {
+        this(consumer, updateSiblings, usesButtons(initialState) ? createButtons(initialState) : null, initialState);
+    }
+
+    private static boolean usesButtons(BoardState state) {
+        return state.getWidth() <= MAX_BUTTON_SIZE && state.getHeight() <= MAX_BUTTON_SIZE;
+    }
+
+    private static Button[][] createButtons(BoardState state) {
+        boolean coloured = state instanceof ColoredBoardState;
+        Button[][] buttons = coloured
+                ? new ColoredButton[state.getHeight()][state.getWidth()]
+                : new NormalButton[state.getHeight()][state.getWidth()];
+        for (int row = 0; row < state.getHeight(); row++) {
+            for (int column = 0; column < state.getWidth(); column++) {
+                if (coloured) {
+                    buttons[row][column] = new ColoredButton(row, column, state.getCell(row, column));
+                } else {
+                    buttons[row][column] = new NormalButton(row, column, state.isOn(row, column));
+                }
+            }
+        }
+        return buttons;
+    }
 
     /**
      * Retrieve the Button at the given location.
      *
      * @param row    - Row position of the button
      * @param column - Column position of the button
-     * @return Button at the given location. This is either a NormalButton or a ColouredButton.
+     * @return Button at the given location. This is either a NormalButton or a ColouredButton, or
+     * null where the board is painted by a BoardCanvas.
      */
     public Button getButton(int row, int column) {
-        return this.buttons[row][column];
+        return this.buttons == null ? null : this.buttons[row][column];
     }
 
 
     /**
-     * Updates the buttons adjacent to a given button which has been activated.
-     * Does not update the button at the position itself. This method will not update adjacent buttons
-     * or 'siblings', if 'updateSiblings' is set to false. It will always inform the consumer - the
-     * Game or board editor - that an update has occurred.
+     * Retrieve the headless state this board is rendering
+     *
+     * @return BoardState holding the lights of this board
+     */
+    public BoardState getState() {
+        return state;
+    }
+
+    /**
+     * Applies the activation of a button to the board state and re-renders the affected buttons.
+     * The button and those its topology reaches are altered, unless 'updateSiblings' is set to
+     * false, in which case only the button itself is. It will always inform the consumer - the Game
+     * or board editor - that an update has occurred.
      *
      * @param row    - The row position of the button which has been clicked.
      * @param column - The column number of the button which has been clicked.
      */
     public void handleActivation(int row, int column) {
+        this.beginBatch();
+        batchActivated = true;
+        if (!shouldUpdateSiblings) {
+            history.toggle(state, row, column);
+            renderButton(row, column);
+        } else {
+            history.press(state, row, column);
+            this.renderAround(row, column);
+        }
+
+        BoardConsumer consumer = this.getConsumer();
+        if (consumer != null) {
+            consumer.handleUpdate(row, column);
+        }
+        this.endBatch();
+    }
+
+    /**
+     * Re-render a button and those a press on it alters
+     */
+    private void renderAround(int row, int column) {
+        renderButton(row, column);
+        int count = state.getToggleMasks().getToggledCells(row, column, toggled);
+        for (int i = 0; i < count; i++) {
+            renderButton(toggled[i] / width, toggled[i] % width);
+        }
+    }
+
+    /**
+     * Undo the last activation which has not been undone, and inform the consumer with
+     * handleUndo. Does nothing if the board is disabled.
+     *
+     * @return boolean indicating if there was an activation to undo
+     */
+    public boolean undo() {
+        return enabled && this.applyHistory(history.undo(state), false);
+    }
+
+    /**
+     * Make the last activation which was undone again, and inform the consumer with handleUndo.
+     * Does nothing if the board is disabled.
+     *
+     * @return boolean indicating if there was an activation to redo
+     */
+    public boolean redo() {
+        return enabled && this.applyHistory(history.redo(state), true);
+    }
+
+    private boolean applyHistory(int cell, boolean redone) {
+        if (cell < 0) {
+            return false;
+        }
+        int row = cell / width;
+        int column = cell % width;
+        this.beginBatch();
+        batchActivated = true;
+        this.renderAround(row, column);
         BoardConsumer consumer = this.getConsumer();
-        // If a consumer is set and siblings should not be updated, stop early and inform the parent.
-        if (!shouldUpdateSiblings && consumer != null) {
-            consumer.handleUpdate();
+        if (consumer != null) {
+            consumer.handleUndo(row, column, redone);
+        }
+        this.endBatch();
+        return true;
+    }
+
+    /**
+     * Determines whether there is an activation to undo
+     *
+     * @return boolean indicating if undo will change the board
+     */
+    public boolean canUndo() {
+        return enabled && history.canUndo();
+    }
+
+    /**
+     * Determines whether there is an activation to redo
+     *
+     * @return boolean indicating if redo will change the board
+     */
+    public boolean canRedo() {
+        return enabled && history.canRedo();
+    }
+
+    /**
+     * Forget every activation, so that none can be undone
+     */
+    public void clearHistory() {
+        history.clear();
+    }
+
+    /**
+     * Start collecting changes rather than displaying them straight away. Until the matching
+     * endBatch, changed cells are only recorded; the outermost endBatch then renders and paints
+     * only the changed cells, or repaints the area covering them in one go where there are more
+     * than MAX_DIRTY_CELLS. Batches may be nested.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * End a batch started by beginBatch. When the outermost batch ends the changed cells are
+     * displayed, and if any activations happened the consumer is informed through
+     * BoardConsumer.handleBatchUpdate.
+     */
+    public void endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("No batch has been started");
+        }
+        batchDepth--;
+        if (batchDepth > 0) {
             return;
         }
-        // Button above
-        if (row - 1 >= 0) {
-            buttons[row - 1][column].update();
+        this.flush();
+        if (batchActivated) {
+            batchActivated = false;
+            BoardConsumer consumer = this.getConsumer();
+            if (consumer != null) {
+                consumer.handleBatchUpdate();
+            }
+        }
+    }
+
+    /**
+     * Apply several activations as a single batch, such as when playing back a solution
+     *
+     * @param actions Code calling handleActivation, run between beginBatch and endBatch
+     */
+    public void runBatch(Runnable actions) {
+        this.beginBatch();
+        try {
+            actions.run();
+        } finally {
+            this.endBatch();
         }
-        // Button below
-        if (row + 1 < BOARD_SIZE) {
-            buttons[row + 1][column].update();
+    }
+
+    /**
+     * Animate a move log on this board, making each press through handleActivation at the time it
+     * was recorded. Presses due at the same moment are shown as one batch.
+     *
+     * @param log      Presses to make. Must be for a board of this size.
+     * @param speed    How many times faster than it was recorded to replay the log, such as 1 for
+     *                 real time or 4 to fast forward
+     * @param finished Run on the Event Dispatch Thread once the last press is made. May be null.
+     * @return Timer driving the replay, which can be stopped to abandon it
+     */
+    public Timer replay(MoveLog log, double speed, Runnable finished) {
+        if (log.getWidth() != width || log.getHeight() != height) {
+            throw new IllegalArgumentException("Log is for a " + log.getWidth() + "x" + log.getHeight() + " board");
         }
-        // Button to the left
-        if (column - 1 >= 0) {
-            buttons[row][column - 1].update();
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
         }
+        MoveLog.Cursor cursor = log.cursor();
+        boolean[] pending = {cursor.next()};
+        long start = System.nanoTime();
+        Timer timer = new Timer(0, null);
+        timer.setRepeats(false);
+        timer.addActionListener(e -> {
+            double now = (System.nanoTime() - start) * speed / 1_000_000;
+            this.runBatch(() -> {
+                while (pending[0] && cursor.getTime() <= now) {
+                    this.handleActivation(cursor.getRow(), cursor.getColumn());
+                    pending[0] = cursor.next();
+                }
+            });
+            if (pending[0]) {
+                timer.setInitialDelay((int) Math.min(Integer.MAX_VALUE, Math.ceil((cursor.getTime() - now) / speed)));
+                timer.start();
+            } else if (finished != null) {
+                finished.run();
+            }
+        });
+        timer.start();
+        return timer;
+    }
+
+    /**
+     * Determines whether a batch is open, in which case changes have not been displayed yet
+     *
+     * @return boolean indicating if changes are being collected
+     */
+    public boolean isBatching() {
+        return batchDepth > 0;
+    }
 
-        // Button to the right
-        if (column + 1 < BOARD_SIZE) {
-            buttons[row][column + 1].update();
+    /**
+     * Display every cell changed in the batch which has just ended
+     */
+    private void flush() {
+        if (minRow > maxRow) {
+            return;
         }
-        if (consumer != null) {
-            this.getConsumer().handleUpdate();
+        if (dirtyCount <= MAX_DIRTY_CELLS) {
+            this.paintDirtyCells();
+        } else if (canvas != null) {
+            canvas.repaintCells(minRow, minColumn, maxRow, maxColumn);
+        } else {
+            // Each button would otherwise schedule its own repaint as its colour changes
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    buttons[row][column].setRepaintDeferred(true);
+                    buttons[row][column].render(state.getCell(row, column));
+                    buttons[row][column].setRepaintDeferred(false);
+                }
+            }
+            Rectangle first = buttons[minRow][minColumn].getBounds();
+            this.board.repaint(first.union(buttons[maxRow][maxColumn].getBounds()));
         }
+        dirtyCount = 0;
+        minRow = Integer.MAX_VALUE;
+        maxRow = -1;
+        minColumn = Integer.MAX_VALUE;
+        maxColumn = -1;
+    }
 
+    /**
+     * Display each listed cell, painting each run of neighbouring cells in a row straight away.
+     * Repaints requested from Swing would be merged into a single area covering every cell, which
+     * after a press wrapping around the edges could be the whole board.
+     */
+    private void paintDirtyCells() {
+        Arrays.sort(dirtyCells, 0, dirtyCount);
+        int start = 0;
+        while (start < dirtyCount) {
+            int end = start;
+            int row = dirtyCells[start] / width;
+            // Extend the run over repeated and adjacent cells on the same row
+            while (end + 1 < dirtyCount && dirtyCells[end + 1] - dirtyCells[end] <= 1
+                    && dirtyCells[end + 1] / width == row) {
+                end++;
+            }
+            int firstColumn = dirtyCells[start] % width;
+            int lastColumn = dirtyCells[end] % width;
+            if (canvas != null) {
+                canvas.paintImmediately(canvas.getCellBounds(row, firstColumn, row, lastColumn));
+            } else {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    buttons[row][column].setRepaintDeferred(true);
+                    buttons[row][column].render(state.getCell(row, column));
+                    buttons[row][column].setRepaintDeferred(false);
+                }
+                Rectangle first = buttons[row][firstColumn].getBounds();
+                this.board.paintImmediately(first.union(buttons[row][lastColumn].getBounds()));
+            }
+            start = end + 1;
+        }
     }
 
     /**
-     * Determines whether this board is 'solved' - it is solved when all lights are out.
+     * Reload this board in place with new lights, such as when moving to another level. The
+     * existing panel and buttons are reused and only cells whose light changes are re-rendered, in
+     * a single batch, so nothing is laid out again. Buttons disabled by disable are enabled again,
+     * and the undo history is cleared.
      *
-     * @return boolean indicating if all buttons are 'off', using Button.isOn.
+     * @param newState The lights to display. These are copied, so may be modified afterwards.
+     * @return boolean indicating if the board was reloaded. Boards of a different size, variant or
+     * topology cannot be reloaded, and a new Board must be created instead.
      */
-    public boolean isSolved() {
-        // If any buttons are lit, it is not solved.
-        for (int row = 0; row < BOARD_SIZE; row++) {
-            for (int col = 0; col < BOARD_SIZE; col++) {
-                if (this.getButton(row, col).isOn()) {
-                    return false;
+    public boolean reload(BoardState newState) {
+        if (newState.getWidth() != width || newState.getHeight() != height
+                || (newState instanceof ColoredBoardState) != (state instanceof ColoredBoardState)
+                || !newState.getTopology().equals(state.getTopology())) {
+            return false;
+        }
+        history.clear();
+        this.beginBatch();
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int cell = newState.getCell(row, column);
+                if (cell != state.getCell(row, column)) {
+                    state.setCell(row, column, cell);
+                    renderButton(row, column);
+                }
+                if (!enabled && canvas == null) {
+                    buttons[row][column].setEnabled(true);
                 }
             }
         }
+        this.endBatch();
+        if (canvas != null) {
+            canvas.setEnabled(true);
+        }
+        enabled = true;
         return true;
     }
 
+    /**
+     * Record that a cell has changed, so it is displayed when the open batch ends
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     */
+    private void renderButton(int row, int column) {
+        if (dirtyCount < MAX_DIRTY_CELLS) {
+            dirtyCells[dirtyCount] = row * width + column;
+        }
+        // Counts past MAX_DIRTY_CELLS, after which only the bounds are used
+        dirtyCount++;
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minColumn = Math.min(minColumn, column);
+        maxColumn = Math.max(maxColumn, column);
+    }
+
+    /**
+     * Determines whether this board is 'solved' - it is solved when all lights are out.
+     *
+     * @return boolean indicating if all lights are 'off', using BoardState.isSolved.
+     */
+    public boolean isSolved() {
+        return state.isSolved();
+    }
+
     /**
      * Set whether adjacent buttons should be altered on click.
      * Generally true for a normal game, and false for an editing board.
@@ -192,11 +596,16 @@ public class Board {
 
     /**
      * Disables the buttons within this board so that they can no longer be altered by clicking on
-     * them. Uses JButton.setEnabled.
+     * them. Uses JButton.setEnabled, or disables the canvas for painted boards.
      */
     public void disable() {
-        for (int row = 0; row < BOARD_SIZE; row++) {
-            for (int col = 0; col < BOARD_SIZE; col++) {
+        enabled = false;
+        if (canvas != null) {
+            canvas.setEnabled(false);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
                 this.getButton(row, col).setEnabled(false);
             }
         }
@@ -207,9 +616,9 @@ public class Board {
      * Useful for debugging - does not represent colours.
      */
     public void print() {
-        for (int row = 0; row < BOARD_SIZE; row++) {
-            for (int column = 0; column < BOARD_SIZE; column++) {
-                if (getButton(row, column).isOn()) {
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                if (state.isOn(row, column)) {
                     System.out.print("X");
                 } else {
                     System.out.print("O");
@@ -0,0 +1,156 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Displays a whole board as a single component, painting the cells straight from the board's
+ * state rather than using a button per cell. Clicks are mapped to cells arithmetically, and only
+ * the cells which change are repainted. Used by Board for boards too large for a grid of buttons.
+ * <p>
+ * Cells are stretched to fill the component. Where cells are large enough they are drawn as
+ * rectangles separated by a gap like the buttons are. Smaller cells are written as single pixels
+ * into an image which is then scaled up, as drawing hundreds of thousands of rectangles is too slow.
+ */
+public class BoardCanvas extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Smallest cell, in pixels, which is drawn with a gap around it
+     */
+    private static final int MIN_GAPPED_CELL = 8;
+    private static final int GAP = 1;
+
+    private final Board board;
+    private final BoardState state;
+    private final boolean coloured;
+    /**
+     * One pixel per cell, used when cells are too small for gaps
+     */
+    private BufferedImage image;
+    private int[] pixels;
+
+    /**
+     * Create a canvas displaying a board's state
+     *
+     * @param board The board to display and to pass clicks to
+     */
+    public BoardCanvas(Board board) {
+        this.board = board;
+        this.state = board.getState();
+        this.coloured = state instanceof ColoredBoardState;
+        this.setOpaque(true);
+
+        this.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (!BoardCanvas.this.isEnabled() || !SwingUtilities.isLeftMouseButton(e)) {
+                    return;
+                }
+                int row = BoardCanvas.this.rowAt(e.getY());
+                int column = BoardCanvas.this.columnAt(e.getX());
+                if (row >= 0 && row < state.getHeight() && column >= 0 && column < state.getWidth()) {
+                    BoardCanvas.this.board.handleActivation(row, column);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the left edge of a column. Columns share the width evenly, so edges are rounded down.
+     */
+    private int columnEdge(int column) {
+        return (int) ((long) column * this.getWidth() / state.getWidth());
+    }
+
+    private int rowEdge(int row) {
+        return (int) ((long) row * this.getHeight() / state.getHeight());
+    }
+
+    private int columnAt(int x) {
+        return (int) ((long) x * state.getWidth() / Math.max(1, this.getWidth()));
+    }
+
+    private int rowAt(int y) {
+        return (int) ((long) y * state.getHeight() / Math.max(1, this.getHeight()));
+    }
+
+    /**
+     * Mark a block of cells as needing to be repainted
+     *
+     * @param firstRow    Top row of the block
+     * @param firstColumn Left column of the block
+     * @param lastRow     Bottom row of the block, inclusive
+     * @param lastColumn  Right column of the block, inclusive
+     */
+    public void repaintCells(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        this.repaint(this.getCellBounds(firstRow, firstColumn, lastRow, lastColumn));
+    }
+
+    /**
+     * Get the area covered by a block of cells
+     *
+     * @param firstRow    Top row of the block
+     * @param firstColumn Left column of the block
+     * @param lastRow     Bottom row of the block, inclusive
+     * @param lastColumn  Right column of the block, inclusive
+     * @return Rectangle within this canvas
+     */
+    public Rectangle getCellBounds(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        int x = this.columnEdge(firstColumn);
+        int y = this.rowEdge(firstRow);
+        return new Rectangle(x, y, this.columnEdge(lastColumn + 1) - x, this.rowEdge(lastRow + 1) - y);
+    }
+
+    private Color colorOf(int row, int column) {
+        if (coloured) {
+            return ColoredButton.COLORS[state.getCell(row, column)];
+        }
+        return state.isOn(row, column) ? NormalButton.ON_COLOR : Button.OFF_COLOR;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, this.getWidth(), this.getHeight());
+        }
+        int width = state.getWidth();
+        int height = state.getHeight();
+        // Only the cells overlapping the dirty area are painted
+        int firstRow = Math.max(0, this.rowAt(clip.y));
+        int lastRow = Math.min(height - 1, this.rowAt(clip.y + clip.height - 1));
+        int firstColumn = Math.max(0, this.columnAt(clip.x));
+        int lastColumn = Math.min(width - 1, this.columnAt(clip.x + clip.width - 1));
+
+        if (this.getWidth() / width < MIN_GAPPED_CELL || this.getHeight() / height < MIN_GAPPED_CELL) {
+            if (image == null) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            }
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    pixels[row * width + column] = this.colorOf(row, column).getRGB();
+                }
+            }
+            g.drawImage(image, this.columnEdge(firstColumn), this.rowEdge(firstRow),
+                    this.columnEdge(lastColumn + 1), this.rowEdge(lastRow + 1),
+                    firstColumn, firstRow, lastColumn + 1, lastRow + 1, null);
+            return;
+        }
+
+        g.setColor(MainFrame.SECONDARY_BACKGROUND);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int top = this.rowEdge(row) + GAP;
+            int cellHeight = this.rowEdge(row + 1) - GAP - top;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int left = this.columnEdge(column) + GAP;
+                g.setColor(this.colorOf(row, column));
+                g.fillRect(left, top, this.columnEdge(column + 1) - GAP - left, cellHeight);
+            }
+        }
+    }
+}
@@ -8,8 +8,34 @@ import javax.swing.*;
 public interface BoardConsumer {
     /**
      * Inform the parent of a board state change
+     *
+     * @param row    Row position of the button which was activated
+     * @param column Column position of the button which was activated
      */
-    void handleUpdate();
+    void handleUpdate(int row, int column);
+
+    /**
+     * Inform the parent that an activation has been undone or redone. Normal presses and toggles
+     * undo themselves, so by default this is treated as another activation of the same cell.
+     *
+     * @param row    Row position of the button whose activation was undone or redone
+     * @param column Column position of the button whose activation was undone or redone
+     * @param redone Whether the activation was redone rather than undone
+     * @see Board#undo
+     */
+    default void handleUndo(int row, int column, boolean redone) {
+        this.handleUpdate(row, column);
+    }
+
+    /**
+     * Inform the parent that a batch of activations has been displayed. Called once per batch,
+     * after handleUpdate has been called for every activation in it, so work such as refreshing
+     * labels can be done once rather than per activation.
+     *
+     * @see Board#beginBatch
+     */
+    default void handleBatchUpdate() {
+    }
 
     JPanel getPanel();
 
@@ -1,5 +1,6 @@
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Allows a board to be edited and it's board to be extracted so it can be played.
@@ -7,9 +8,22 @@ import java.awt.*;
  */
 public class BoardEditor implements BoardConsumer {
     private final Board board;
+    private final LightsOutSolver solver;
+    /**
+     * Which quiet patterns the board currently has an odd number of lights in common with. The
+     * board is solvable exactly when this is zero. Updated with one XOR on each toggle.
+     */
+    private long syndrome;
+    /**
+     * Canonical keys of the existing normal levels, so boards which merely rotate or reflect one
+     * can be pointed out. Read once per process on a background thread, as it means reading every
+     * level.
+     */
+    private static CompletableFuture<LongHashSet> existingLevels;
     private final JFrame frame;
     private final JLabel validLabel;
     private final JButton startGame;
+    private final UndoControls undoControls;
     private final JPanel gamePanel;
     private final JPanel bottom;
 
@@ -20,20 +34,35 @@ public class BoardEditor implements BoardConsumer {
      * @param informMain A lambda to call when editing is complete.
      */
     public BoardEditor(JFrame parent, EditDone informMain) {
+        this(parent, informMain, Topology.STANDARD);
+    }
+
+    /**
+     * Create a new Board editor for boards played with the given topology, add it to Parent frame,
+     * and call lambda when editing is complete. Solvability is checked under that topology.
+     *
+     * @param parent     The JFrame to add this BoardEditor to
+     * @param informMain A lambda to call when editing is complete.
+     * @param topology   Rule deciding which lights a press alters once the board is played
+     */
+    public BoardEditor(JFrame parent, EditDone informMain, Topology topology) {
         frame = parent;
         gamePanel = new JPanel();
         BoxLayout gamePanelLayout = new BoxLayout(gamePanel, BoxLayout.Y_AXIS);
         gamePanel.setLayout(gamePanelLayout);
         gamePanel.setSize(500, 300);
 
-        board = new Board(this, false);
+        board = new Board(this, false, new NormalBoardState(Board.BOARD_SIZE, Board.BOARD_SIZE, topology));
+        solver = new LightsOutSolver(Board.BOARD_SIZE, Board.BOARD_SIZE, topology);
+        // Edited boards are always made of NormalButtons
+        syndrome = solver.syndrome((NormalBoardState) board.getState());
 
         // Bottom part
         bottom = new JPanel();
         bottom.setLayout(new BorderLayout());
         bottom.setSize(300, 190);
-        bottom.setPreferredSize(new Dimension(300, 50));
-        bottom.setMaximumSize(new Dimension(300, 50));
+        bottom.setPreferredSize(new Dimension(300, 90));
+        bottom.setMaximumSize(new Dimension(300, 90));
         bottom.setOpaque(false);
 
         validLabel = new JLabel();
@@ -51,96 +80,90 @@ public class BoardEditor implements BoardConsumer {
         });
         startGame.setEnabled(false);
 
+        undoControls = new UndoControls(() -> board);
+        undoControls.bindKeys(gamePanel);
+
         bottom.add(validLabel, BorderLayout.LINE_START);
+        bottom.add(undoControls, BorderLayout.PAGE_END);
         bottom.add(startGame, BorderLayout.LINE_END);
 
         parent.add(gamePanel);
         parent.add(bottom);
+
+        // Once the levels have been read, the board already being edited may turn out to match one
+        getExistingLevels().thenRun(() -> SwingUtilities.invokeLater(() -> {
+            if (!validLabel.getText().isEmpty()) {
+                this.updateLabel();
+            }
+        }));
     }
 
     /**
-     * Returns a boolean if this board is solvable, by attempting to 'chase the lights' and then
-     * checking the bottom row to see if it is a solvable combination
+     * Start reading the canonical keys of the existing normal levels, if they have not been read
      *
-     * @return Boolean indicating if the current board can be solved.
-     * @see <a href="https://www.logicgamesonline.com/lightsout/tutorial.html">LogicGamesOnline</a>
+     * @return CompletableFuture completed with the keys once every level has been read
      */
-    public boolean isSolvable() {
-        // Clone board
-        Board testBoard = new Board(null, true);
-        for (int row = 0; row < Board.BOARD_SIZE; row++) {
-            for (int column = 0; column < Board.BOARD_SIZE; column++) {
-                Button button = this.board.getButton(row, column);
-                if (button.isOn()) {
-                    testBoard.getButton(row, column).update();
-                }
-            }
-        }
-
-        // Iterate top row and turn those below them on
-        for (int row = 0; row < Board.BOARD_SIZE - 1; row++) {
-            for (int column = 0; column < Board.BOARD_SIZE; column++) {
-                Button button = testBoard.getButton(row, column);
-                if (button.isOn()) {
-                    // hit the button below it
-                    testBoard.getButton(row + 1, column).activate();
-                }
-            }
-        }
-
-        // Check for bottom shapes
-        int finalRow = Board.BOARD_SIZE - 1;
-        boolean buttonOne = testBoard.getButton(finalRow, 0).isOn();
-        boolean buttonTwo = testBoard.getButton(finalRow, 1).isOn();
-        boolean buttonThree = testBoard.getButton(finalRow, 2).isOn();
-        boolean buttonFour = testBoard.getButton(finalRow, 3).isOn();
-        boolean buttonFive = testBoard.getButton(finalRow, 4).isOn();
-
-        // Check if all are out:
-        if (!buttonOne && !buttonTwo && !buttonThree && !buttonFour && !buttonFive) {
-            return true;
-        }
-
-        // __+++ means it is solvable
-        if (!buttonOne && !buttonTwo && buttonThree && buttonFour && buttonFive) {
-            return true;
-        }
-
-        // _ + _ + _ is also solvable
-        if (!buttonOne && buttonTwo && !buttonThree && buttonFour && !buttonFive) {
-            return true;
-        }
-
-        // _++_+ is solvable
-        if (!buttonOne && buttonTwo && buttonThree && !buttonFour && buttonFive) {
-            return true;
-        }
-
-        // +___+ is solvable
-        if (buttonOne && !buttonTwo && !buttonThree && !buttonFour && buttonFive) {
-            return true;
+    private static synchronized CompletableFuture<LongHashSet> getExistingLevels() {
+        if (existingLevels == null) {
+            existingLevels = CompletableFuture.supplyAsync(() -> LevelReader.readCanonicalLevels(false))
+                    .exceptionally(error -> {
+                        // Boards are still checked for solvability, just not against the levels
+                        System.out.println("Failed to read existing levels due to error");
+                        error.printStackTrace();
+                        return new LongHashSet();
+                    });
         }
+        return existingLevels;
+    }
 
-        // +_++_ is solvable
-        if (buttonOne && !buttonTwo && buttonThree && buttonFour && !buttonFive) {
-            return true;
-        }
+    /**
+     * Returns a boolean if this board is solvable. A board is solvable exactly when it has an even
+     * number of lights in common with each of the solver's quiet patterns, which is tracked as each
+     * light is toggled, so this takes constant time.
+     *
+     * @return Boolean indicating if the current board can be solved.
+     * @see LightsOutSolver#getCellSyndrome
+     */
+    public boolean isSolvable() {
+        return syndrome == 0;
+    }
 
-        // ++_++
-        if (buttonOne && buttonTwo && !buttonThree && buttonFour && buttonFive) {
-            return true;
+    /**
+     * Returns a boolean if this board is the same as one of the existing levels, or a rotation or
+     * reflection of one. Until the existing levels have been read in the background, no board
+     * matches one. Existing levels are all standard, so boards with any other topology never match.
+     *
+     * @return Boolean indicating if the current board duplicates a level
+     */
+    public boolean isExistingLevel() {
+        if (!board.getState().getTopology().isStandard()) {
+            return false;
         }
+        LongHashSet levels = getExistingLevels().getNow(null);
+        return levels != null && levels.contains(PackedBoard.canonicalKey(board.getState()));
+    }
 
-        // Final condition - if it is false then no solution was found.
-        // +++__
-        return buttonOne && buttonTwo && buttonThree && !buttonFour && !buttonFive;
+    /**
+     * Update whether the board is solvable after a light has been toggled, and set the solvable
+     * label to match. Toggles undo themselves, so this is also called when one is undone or redone.
+     *
+     * @param row    Row position of the light which was toggled
+     * @param column Column position of the light which was toggled
+     */
+    public void handleUpdate(int row, int column) {
+        syndrome ^= solver.getCellSyndrome(row, column);
+        this.updateLabel();
     }
 
     /**
-     * Set the solvable label based on whether the current board can be solved, or not.
+     * Set the solvable label and start button to match the current board
      */
-    public void handleUpdate() {
-        if (this.isSolvable()) {
+    private void updateLabel() {
+        if (this.isSolvable() && this.isExistingLevel()) {
+            validLabel.setText("Solvable, but matches an existing level");
+            validLabel.setForeground(Color.orange);
+            startGame.setEnabled(true);
+        } else if (this.isSolvable()) {
             validLabel.setText("Solvable!");
             validLabel.setForeground(Color.green);
             startGame.setEnabled(true);
@@ -149,6 +172,7 @@ public class BoardEditor implements BoardConsumer {
             validLabel.setText("Not solvable");
             startGame.setEnabled(false);
         }
+        undoControls.update();
     }
 
     /**
@@ -0,0 +1,134 @@
+/**
+ * The headless state of a board. This holds which lights are lit and applies presses to them
+ * without any Swing components, so it can be used for simulations and solving. The Board and its
+ * buttons only render this state. Which cells a press alters is decided by the board's Topology.
+ *
+ * @see NormalBoardState
+ * @see ColoredBoardState
+ */
+public abstract class BoardState {
+    private final int width;
+    private final int height;
+    private final ToggleMasks masks;
+
+    /**
+     * Create a new state of the given size
+     *
+     * @param width    Number of lights wide the board is
+     * @param height   Number of lights high the board is
+     * @param topology Rule deciding which cells a press alters
+     */
+    protected BoardState(int width, int height, Topology topology) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid board size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.masks = topology.compile(width, height);
+    }
+
+    /**
+     * Retrieve the number of lights wide this board is
+     *
+     * @return int width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieve the number of lights high this board is
+     *
+     * @return int height of the board
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieve the rule deciding which cells a press alters
+     *
+     * @return Topology of this board
+     */
+    public Topology getTopology() {
+        return masks.getTopology();
+    }
+
+    /**
+     * Retrieve the topology of this board compiled for its size
+     *
+     * @return ToggleMasks used by press
+     */
+    public ToggleMasks getToggleMasks() {
+        return masks;
+    }
+
+    /**
+     * Press the cell at the given position, altering it and the cells its topology reaches.
+     *
+     * @param row    Row position of the pressed cell
+     * @param column Column position of the pressed cell
+     */
+    public abstract void press(int row, int column);
+
+    /**
+     * Alter the cell at the given position alone, without affecting the lights around it.
+     * Used when editing a board.
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     */
+    public abstract void toggle(int row, int column);
+
+    /**
+     * Retrieve the state of a single cell
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return int representing the cell. 0 or 1 for normal boards, 0 to 3 for coloured boards.
+     */
+    public abstract int getCell(int row, int column);
+
+    /**
+     * Set the state of a single cell
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @param state  int representing the cell, as returned by getCell
+     */
+    public abstract void setCell(int row, int column, int state);
+
+    /**
+     * Determines if the cell at the given position is lit
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return boolean indicating whether the cell is lit
+     */
+    public abstract boolean isOn(int row, int column);
+
+    /**
+     * Retrieve the number of lit cells. This is kept up to date as the board changes, so takes
+     * constant time.
+     *
+     * @return int number of cells for which isOn is true
+     */
+    public abstract int getLitCount();
+
+    /**
+     * Determines whether this board is 'solved' - it is solved when all lights are out. Takes
+     * constant time, as the number of lit cells is maintained.
+     *
+     * @return boolean indicating if no cells are lit
+     */
+    public boolean isSolved() {
+        return this.getLitCount() == 0;
+    }
+
+    /**
+     * Create an independent copy of this state
+     *
+     * @return A new BoardState of the same type holding the same lights
+     */
+    public abstract BoardState copy();
+}
@@ -13,6 +13,10 @@ public abstract class Button extends JButton implements ActionListener {
     private final int row;
     private final int column;
     private Board board;
+    /**
+     * Set while the board is displaying a batch of changes, which it repaints in one go
+     */
+    private boolean repaintDeferred = false;
 
     /**
      * Create a new button with the specified
@@ -46,18 +50,27 @@ public abstract class Button extends JButton implements ActionListener {
 
     /**
      * Alter the state of this button and of those around it - used when a button is clicked.
-     * Causes update to be run on this button and those above, left, right and below by directing
-     * the board to carry these updates out
+     * The board applies the press to its state and re-renders this button and those above, left,
+     * right and below.
      */
     public void activate() {
-        this.update();
         board.handleActivation(this.row, this.column);
     }
 
     /**
-     * Update this button alone without altering the surrounding buttons
+     * Display the given cell state on this button alone. The button holds no game logic of its
+     * own - the state is owned by the board's BoardState.
+     *
+     * @param state int representing the cell, as returned by BoardState.getCell
+     */
+    public abstract void render(int state);
+
+    /**
+     * Retrieve the cell state this button is currently displaying
+     *
+     * @return int representing the cell, as used by BoardState.getCell
      */
-    public abstract void update();
+    public abstract int getState();
 
     /**
      * Determines if this button is lit
@@ -67,6 +80,23 @@ public abstract class Button extends JButton implements ActionListener {
      */
     public abstract boolean isOn();
 
+    /**
+     * Set whether this button should skip scheduling its own repaints, because the board will
+     * repaint the area around it once a batch of changes has been displayed.
+     *
+     * @param repaintDeferred Whether repaints are left to the board
+     */
+    void setRepaintDeferred(boolean repaintDeferred) {
+        this.repaintDeferred = repaintDeferred;
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (!repaintDeferred) {
+            super.repaint(tm, x, y, width, height);
+        }
+    }
+
     public void setBoard(Board board) {
         this.board = board;
     }
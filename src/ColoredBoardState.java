@@ -0,0 +1,162 @@
+/**
+ * Board state for the coloured variant. Each cell holds a colour from 0 to 3, matching
+ * ColoredButton: 0 is green, 1 is off, 2 is red and 3 is blue. Presses cycle a cell
+ * 0 -> 1 -> 2 -> 3 -> 1.
+ * <p>
+ * The colours are stored as two bit planes laid out in the same packed rows as NormalBoardState,
+ * so that a press is applied to every cell its topology reaches using the same toggle masks as
+ * the normal variant. The high plane is set for exactly the lit colours (2 and 3), and the number
+ * of lit cells is kept up to date from it so checking whether the board is solved takes constant
+ * time.
+ *
+ * @see ColoredButton
+ */
+public class ColoredBoardState extends BoardState {
+    private final ToggleMasks masks;
+    private final int wordsPerRow;
+    /**
+     * Low bit of each cell's colour
+     */
+    private final long[] low;
+    /**
+     * High bit of each cell's colour. Set when the cell is lit.
+     */
+    private final long[] high;
+    private int litCount = 0;
+
+    /**
+     * Create a new standard size board with every cell green
+     */
+    public ColoredBoardState() {
+        this(Board.BOARD_SIZE, Board.BOARD_SIZE);
+    }
+
+    /**
+     * Create a new board of the given size with every cell green, using the standard topology
+     *
+     * @param width  Number of cells wide the board is
+     * @param height Number of cells high the board is
+     */
+    public ColoredBoardState(int width, int height) {
+        this(width, height, Topology.STANDARD);
+    }
+
+    /**
+     * Create a new board of the given size and topology with every cell green
+     *
+     * @param width    Number of cells wide the board is
+     * @param height   Number of cells high the board is
+     * @param topology Rule deciding which cells a press alters
+     */
+    public ColoredBoardState(int width, int height, Topology topology) {
+        super(width, height, topology);
+        this.masks = getToggleMasks();
+        this.wordsPerRow = masks.getWordsPerRow();
+        this.low = new long[wordsPerRow * height];
+        this.high = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Advance every cell within the mask one step around the colour cycle
+     *
+     * @param index Index of the word within both planes
+     * @param mask  Cells within the word to advance
+     */
+    private void advance(int index, long mask) {
+        long lowWord = low[index];
+        long highWord = high[index];
+        // 00 -> 01 -> 10 -> 11 -> 01, applied to every masked cell at once
+        low[index] = (lowWord & ~mask) | ((~lowWord | highWord) & mask);
+        high[index] = highWord ^ (lowWord & mask);
+        litCount += Long.bitCount(high[index]) - Long.bitCount(highWord);
+    }
+
+    @Override
+    public void press(int row, int column) {
+        int lastTarget = masks.getRowEnd(row);
+        if (wordsPerRow == 1) {
+            // Each target row is a single word, advanced by a single mask
+            for (int target = masks.getRowStart(row); target < lastTarget; target++) {
+                advance(masks.getRowBase(target), masks.getMask(masks.getColumnStart(target, column)));
+            }
+            return;
+        }
+        for (int target = masks.getRowStart(row); target < lastTarget; target++) {
+            int base = masks.getRowBase(target);
+            int lastEntry = masks.getColumnEnd(target, column);
+            for (int entry = masks.getColumnStart(target, column); entry < lastEntry; entry++) {
+                long mask = masks.getMask(entry);
+                // Padding entries change nothing, and most columns of a wide board only reach one word
+                if (mask != 0) {
+                    advance(base + masks.getWord(entry), mask);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void toggle(int row, int column) {
+        advance(row * wordsPerRow + (column >>> 6), 1L << column);
+    }
+
+    @Override
+    public int getCell(int row, int column) {
+        int index = row * wordsPerRow + (column >>> 6);
+        return (int) ((high[index] >>> column) & 1) << 1 | (int) ((low[index] >>> column) & 1);
+    }
+
+    @Override
+    public void setCell(int row, int column, int state) {
+        // Invalid values are discarded, as in ColoredButton.setState
+        if (state < 0 || state > 3) {
+            return;
+        }
+        int index = row * wordsPerRow + (column >>> 6);
+        long bit = 1L << column;
+        if (((high[index] & bit) != 0) != ((state & 2) != 0)) {
+            litCount += (state & 2) != 0 ? 1 : -1;
+        }
+        low[index] = (state & 1) != 0 ? low[index] | bit : low[index] & ~bit;
+        high[index] = (state & 2) != 0 ? high[index] | bit : high[index] & ~bit;
+    }
+
+    @Override
+    public boolean isOn(int row, int column) {
+        return ((high[row * wordsPerRow + (column >>> 6)] >>> column) & 1) != 0;
+    }
+
+    @Override
+    public int getLitCount() {
+        return litCount;
+    }
+
+    /**
+     * Retrieve both planes of a standard 5x5 board packed into one long. The low plane is held in
+     * bits 0 to 24 and the high plane in bits 25 to 49, each laid out as described in PackedBoard.
+     *
+     * @return long holding the colour of every cell
+     * @throws IllegalStateException Where this board is not 5x5
+     */
+    public long toPacked() {
+        if (getWidth() != PackedBoard.SIZE || getHeight() != PackedBoard.SIZE) {
+            throw new IllegalStateException("Only " + PackedBoard.SIZE + "x" + PackedBoard.SIZE
+                    + " boards can be packed");
+        }
+        long lowPacked = 0;
+        long highPacked = 0;
+        for (int row = 0; row < PackedBoard.SIZE; row++) {
+            lowPacked |= low[row] << (row * PackedBoard.SIZE);
+            highPacked |= high[row] << (row * PackedBoard.SIZE);
+        }
+        return highPacked << PackedBoard.CELLS | lowPacked;
+    }
+
+    @Override
+    public ColoredBoardState copy() {
+        ColoredBoardState copy = new ColoredBoardState(getWidth(), getHeight(), getTopology());
+        System.arraycopy(low, 0, copy.low, 0, low.length);
+        System.arraycopy(high, 0, copy.high, 0, high.length);
+        copy.litCount = litCount;
+        return copy;
+    }
+}
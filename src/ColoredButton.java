@@ -12,7 +12,7 @@ public class ColoredButton extends Button {
     private static final Color RED_COLOR = Color.red;
     private static final Color GREEN_COLOR = Color.green;
     private static final Color BlUE_COLOR = Color.blue;
-    private static final Color[] COLORS = {GREEN_COLOR, OFF_COLOR, RED_COLOR, BlUE_COLOR};
+    static final Color[] COLORS = {GREEN_COLOR, OFF_COLOR, RED_COLOR, BlUE_COLOR};
     private int state = 0;
 
     /**
@@ -55,17 +55,24 @@ public class ColoredButton extends Button {
 
 
     /**
-     * Toggle the state of this button alone
+     * Display the given colour on this button. Only repaints if the colour has changed.
+     *
+     * @param state int from 0 to 3 representing which colour to use
      */
-    public void update() {
-        if (this.state + 1 >= COLORS.length) {
-            this.setState(1);
-        } else {
-            this.setState(this.state + 1);
+    @Override
+    public void render(int state) {
+        if (state == this.state) {
+            return;
         }
+        this.setState(state);
         this.setBackground(COLORS[this.state]);
     }
 
+    @Override
+    public int getState() {
+        return state;
+    }
+
     /**
      * When state is 0, the colour is dark gray (and thus it is off)
      *
@@ -30,18 +30,24 @@ public class ColoredGame extends Game {
     }
 
     /**
-     * Retrieves the current level from the levels folder
+     * Retrieve the number of coloured levels available
      *
-     * @throws Exception Where an IO Exception occurs or a file is invalid
+     * @return int number of the last coloured level
      */
     @Override
-    protected void setLevelFromFile() throws Exception {
-        // Read the file
-        Level levelInfo = LevelReader.readColouredLevelFile("level" + this.getCurrentLevel());
-        // Set new board and time limit
-        Button[][] buttons = levelInfo.getButtons();
-        this.setBoard(new Board(this, true, buttons));
-        this.setTimeLimit(levelInfo.getTimeLimit());
+    protected int getLevelCount() {
+        return LevelReader.countLevels(true);
+    }
+
+    /**
+     * Retrieves the current level from the level cache and shows it once it is ready, reading it
+     * from the coloured level pack or its file on a background thread if needed, and starts
+     * prefetching the next level
+     */
+    @Override
+    protected void setLevelFromFile() {
+        this.showLevelWhenRead(LevelCache.getDefault().getAsync(this.getCurrentLevel(), true));
+        LevelCache.getDefault().prefetch(this.getCurrentLevel() + 1, true);
     }
 
 }
@@ -0,0 +1,671 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Solves coloured variant boards using linear algebra modulo 3.
+ * <p>
+ * Apart from green, the colours off (1), red (2) and blue (3) form a cycle of length three, so the
+ * number of times a cell must be hit is only fixed modulo 3 and the board can be solved as a
+ * linear system over Z3. Pressing a cell three times changes nothing, so each cell is pressed at
+ * most twice. Green (0) is a one way transient: a green cell which is never hit stays green, which
+ * counts as solved, but once hit it joins the cycle and must then be hit once more than a multiple
+ * of three to end up off. Each green cell is therefore either left untouched, forcing every press
+ * around it to zero, or treated as needing one hit. These choices are searched depth first, each
+ * adding its equations to the reduced system of the choices before it, so that a choice leaving
+ * no solution is abandoned along with every choice after it.
+ * <p>
+ * Press counts are held as two packed bit masks with one bit per cell - one mask for cells pressed
+ * once and one for cells pressed twice - so adding two press vectors modulo 3 is a handful of
+ * bitwise operations. The system only depends on the size and topology of the board, so it is
+ * reduced once per size and topology and shared. Boards of up to MAX_CELLS cells are supported.
+ * <p>
+ * Each solver is cheap to create and not thread safe; use one per thread.
+ *
+ * @see ColoredBoardState
+ */
+public class ColoredSolver {
+    /**
+     * The largest number of cells a board may have - each press vector must fit in a long.
+     */
+    public static final int MAX_CELLS = 64;
+    /**
+     * The largest number of null space vectors that will be searched for a minimal solution.
+     * Above this, solutions are still correct but may not be minimal.
+     */
+    public static final int MAX_MINIMISE_NULLITY = 10;
+    /**
+     * The largest number of green cells a board may have. The choices for the green cells are
+     * searched, so in the worst case the cost doubles with each green cell; boards with this many
+     * are still solved in well under a millisecond.
+     */
+    public static final int MAX_GREENS = 12;
+
+    private static final ConcurrentHashMap<ToggleMasks, Basis> BASES = new ConcurrentHashMap<>();
+
+    private final int width;
+    private final int height;
+    private final Topology topology;
+    private final Basis basis;
+    /**
+     * Scratch indices of the green cells of the board being solved
+     */
+    private final int[] greens;
+    /**
+     * Presses in the best solution found so far, or -1 if none has been found, and the solution
+     */
+    private int best;
+    private long bestOnes;
+    private long bestTwos;
+    /**
+     * Reduced system of equations for each depth of the search over green cells, indexed by
+     * depth * cells + pivot press. Allocated on the first board with a green cell.
+     */
+    private long[] rowOnes;
+    private long[] rowTwos;
+    private int[] rowConstants;
+    /**
+     * Presses which are pivots of the system at each depth
+     */
+    private long[] pivots;
+    /**
+     * Scratch null vectors and base 3 digits for minimising each solution of the search
+     */
+    private long[] nullOnes;
+    private long[] nullTwos;
+    private int[] digits;
+
+    /**
+     * Create a solver for boards of the given size using the standard topology
+     *
+     * @param width  Number of cells wide the boards are
+     * @param height Number of cells high the boards are
+     */
+    public ColoredSolver(int width, int height) {
+        this(width, height, Topology.STANDARD);
+    }
+
+    /**
+     * Create a solver for boards of the given size and topology
+     *
+     * @param width    Number of cells wide the boards are
+     * @param height   Number of cells high the boards are
+     * @param topology Rule deciding which cells a press alters
+     */
+    public ColoredSolver(int width, int height, Topology topology) {
+        if (width < 1 || height < 1 || (long) width * height > MAX_CELLS) {
+            throw new IllegalArgumentException("Unsupported board size: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.topology = topology;
+        ToggleMasks masks = topology.compile(width, height);
+        Topology.limitCache(BASES, masks);
+        this.basis = BASES.computeIfAbsent(masks, Basis::new);
+        this.greens = new int[width * height];
+    }
+
+    /**
+     * Determines whether the given board can be solved
+     *
+     * @param board The board to check. Must match the size of this solver.
+     * @return boolean indicating if some set of presses leaves no cell red or blue
+     */
+    public boolean isSolvable(ColoredBoardState board) {
+        return this.solve(board, null) != -1;
+    }
+
+    /**
+     * Retrieve the number of independent sets of presses which leave this size of board unchanged.
+     * Solutions are only minimal where this is at most MAX_MINIMISE_NULLITY.
+     *
+     * @return int dimension of the null space of the hit matrix
+     */
+    public int getNullity() {
+        return basis.nullity;
+    }
+
+    /**
+     * Find the fewest presses needed to solve the given board - the par for a coloured level
+     *
+     * @param board The board to solve. Must match the size of this solver.
+     * @return int number of presses, or -1 if the board is unsolvable
+     */
+    public int minimumMoves(ColoredBoardState board) {
+        return this.solve(board, null);
+    }
+
+    /**
+     * Find the minimal presses which solve the given board. Does not allocate, other than scratch
+     * space the first time a board with green cells is solved.
+     *
+     * @param board       The board to solve. Must match the size of this solver.
+     * @param pressCounts Array of width * height entries, indexed by row * width + column, which is
+     *                    filled with how many times each cell should be pressed (0 to 2). May be
+     *                    null if only the number of presses is wanted. Left unchanged if the board
+     *                    is unsolvable.
+     * @return int total number of presses, or -1 if the board is unsolvable
+     */
+    public int solve(ColoredBoardState board, int[] pressCounts) {
+        if (board.getWidth() != width || board.getHeight() != height) {
+            throw new IllegalArgumentException("Board is " + board.getWidth() + "x" + board.getHeight()
+                    + " but solver is " + width + "x" + height);
+        }
+        if (!board.getTopology().equals(topology)) {
+            throw new IllegalArgumentException("Board uses the " + board.getTopology() + " topology but solver uses "
+                    + topology);
+        }
+
+        // Build the number of hits each cell needs, treating green cells as needing one
+        long targetOnes = 0;
+        long targetTwos = 0;
+        int greenCount = 0;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int cell = row * width + column;
+                long bit = 1L << cell;
+                switch (board.getCell(row, column)) {
+                    case 0:
+                        greens[greenCount++] = cell;
+                        targetOnes |= bit;
+                        break;
+                    case 2:
+                        targetTwos |= bit;
+                        break;
+                    case 3:
+                        targetOnes |= bit;
+                        break;
+                    default:
+                        // Already off
+                        break;
+                }
+            }
+        }
+
+        if (board.isSolved()) {
+            // Nothing is lit, so pressing nothing is always the best solution
+            if (pressCounts != null) {
+                Arrays.fill(pressCounts, 0, width * height, 0);
+            }
+            return 0;
+        }
+        if (greenCount > MAX_GREENS) {
+            throw new IllegalArgumentException("Boards with more than " + MAX_GREENS + " green cells are not supported");
+        }
+
+        if (greenCount > 0) {
+            this.searchGreens(targetOnes, targetTwos, greenCount);
+        } else {
+            this.solveWithoutGreens(targetOnes, targetTwos);
+        }
+
+        if (best != -1 && pressCounts != null) {
+            for (int cell = 0; cell < width * height; cell++) {
+                pressCounts[cell] = (int) ((bestOnes >>> cell) & 1) + 2 * (int) ((bestTwos >>> cell) & 1);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the minimal solution of a board with no green cells, from the entries of the shared
+     * basis for each cell which needs hitting, leaving it in best, bestOnes and bestTwos
+     */
+    private void solveWithoutGreens(long targetOnes, long targetTwos) {
+        best = -1;
+        // Particular solution of the target, and what is left of it that no presses can produce.
+        // Both are linear in the target, so are summed from the entries of each cell.
+        long ones = 0;
+        long twos = 0;
+        long residualOnes = 0;
+        long residualTwos = 0;
+        for (long remaining = targetOnes | targetTwos; remaining != 0; remaining &= remaining - 1) {
+            int cell = Long.numberOfTrailingZeros(remaining);
+            // A target of two is subtracting the entry, done by swapping its planes
+            boolean negate = (targetTwos & (1L << cell)) != 0;
+            long entryOnes = negate ? basis.particularTwos[cell] : basis.particularOnes[cell];
+            long entryTwos = negate ? basis.particularOnes[cell] : basis.particularTwos[cell];
+            long sum = add1(ones, twos, entryOnes, entryTwos);
+            twos = add2(ones, twos, entryOnes, entryTwos);
+            ones = sum;
+            entryOnes = negate ? basis.residualTwos[cell] : basis.residualOnes[cell];
+            entryTwos = negate ? basis.residualOnes[cell] : basis.residualTwos[cell];
+            sum = add1(residualOnes, residualTwos, entryOnes, entryTwos);
+            residualTwos = add2(residualOnes, residualTwos, entryOnes, entryTwos);
+            residualOnes = sum;
+        }
+        if ((residualOnes | residualTwos) != 0) {
+            // No presses produce this target
+            return;
+        }
+
+        // Every solution differs by a null space combination
+        long[] combinationOnes = basis.nullCombinationOnes;
+        long[] combinationTwos = basis.nullCombinationTwos;
+        for (int i = 0; i < combinationOnes.length; i++) {
+            this.consider(add1(ones, twos, combinationOnes[i], combinationTwos[i]),
+                    add2(ones, twos, combinationOnes[i], combinationTwos[i]));
+        }
+    }
+
+    /**
+     * Find the minimal solution of a board with green cells, leaving it in best, bestOnes and
+     * bestTwos. Each green cell is either left untouched, so every press around it is zero, or hit
+     * once more than a multiple of three. The choices are searched depth first, each adding its
+     * equations to a copy of the reduced system of the choices before it, so a choice which leaves
+     * no solution is abandoned along with every choice after it. Choices which must already press
+     * more than the best solution found are abandoned too.
+     */
+    private void searchGreens(long targetOnes, long targetTwos, int greenCount) {
+        best = -1;
+        int cells = width * height;
+        if (rowOnes == null) {
+            rowOnes = new long[(MAX_GREENS + 1) * cells];
+            rowTwos = new long[(MAX_GREENS + 1) * cells];
+            rowConstants = new int[(MAX_GREENS + 1) * cells];
+            pivots = new long[MAX_GREENS + 1];
+            nullOnes = new long[MAX_MINIMISE_NULLITY];
+            nullTwos = new long[MAX_MINIMISE_NULLITY];
+            digits = new int[MAX_MINIMISE_NULLITY];
+        }
+        // Every cell which is not green needs the hits given by its colour
+        pivots[0] = 0;
+        long greenCells = 0;
+        for (int i = 0; i < greenCount; i++) {
+            greenCells |= 1L << greens[i];
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            if ((greenCells & (1L << cell)) != 0) {
+                continue;
+            }
+            int target = (int) ((targetOnes >>> cell) & 1) + 2 * (int) ((targetTwos >>> cell) & 1);
+            if (!this.addEquation(0, basis.neighbourhoods[cell], 0, target)) {
+                return;
+            }
+        }
+        this.search(0, greenCount);
+    }
+
+    /**
+     * Try both choices for the green cell at index depth, given the system for the choices before it
+     */
+    private void search(int depth, int greenCount) {
+        if (best != -1 && this.lowerBound(depth) >= best) {
+            return;
+        }
+        if (depth == greenCount) {
+            this.minimise(depth);
+            return;
+        }
+        long around = basis.neighbourhoods[greens[depth]];
+        // Leave the green cell untouched, so nothing around it may be pressed
+        this.copySystem(depth);
+        boolean solvable = true;
+        for (long remaining = around; remaining != 0 && solvable; remaining &= remaining - 1) {
+            solvable = this.addEquation(depth + 1, remaining & -remaining, 0, 0);
+        }
+        if (solvable) {
+            this.search(depth + 1, greenCount);
+        }
+        // Or hit it once more than a multiple of three, so it ends up off
+        this.copySystem(depth);
+        if (this.addEquation(depth + 1, around, 0, 1)) {
+            this.search(depth + 1, greenCount);
+        }
+    }
+
+    private void copySystem(int depth) {
+        int cells = width * height;
+        System.arraycopy(rowOnes, depth * cells, rowOnes, (depth + 1) * cells, cells);
+        System.arraycopy(rowTwos, depth * cells, rowTwos, (depth + 1) * cells, cells);
+        System.arraycopy(rowConstants, depth * cells, rowConstants, (depth + 1) * cells, cells);
+        pivots[depth + 1] = pivots[depth];
+    }
+
+    /**
+     * Add the equation coefficients . presses = constant (mod 3) to the system held for a depth.
+     * The system is kept in reduced row echelon form: the row for each pivot press has a
+     * coefficient of one for that press, zero for every other pivot press, and is held at the
+     * pivot's index.
+     *
+     * @return boolean indicating if the system still has a solution
+     */
+    private boolean addEquation(int depth, long ones, long twos, int constant) {
+        int offset = depth * width * height;
+        long pivotMask = pivots[depth];
+        // Eliminate every pivot press from the equation
+        for (long present = (ones | twos) & pivotMask; present != 0; present &= present - 1) {
+            int pivot = Long.numberOfTrailingZeros(present);
+            long pivotOnes = rowOnes[offset + pivot];
+            long pivotTwos = rowTwos[offset + pivot];
+            long sum;
+            if ((ones & (1L << pivot)) != 0) {
+                // Subtract the row, by adding it with its planes swapped
+                sum = add1(ones, twos, pivotTwos, pivotOnes);
+                twos = add2(ones, twos, pivotTwos, pivotOnes);
+                constant += 2 * rowConstants[offset + pivot];
+            } else {
+                // Subtracting twice the row is adding it
+                sum = add1(ones, twos, pivotOnes, pivotTwos);
+                twos = add2(ones, twos, pivotOnes, pivotTwos);
+                constant += rowConstants[offset + pivot];
+            }
+            ones = sum;
+        }
+        constant %= 3;
+        long presses = ones | twos;
+        if (presses == 0) {
+            // Already implied by the system, or contradicts it
+            return constant == 0;
+        }
+
+        long bit = presses & -presses;
+        int pivot = Long.numberOfTrailingZeros(bit);
+        if ((twos & bit) != 0) {
+            // Halve the equation so its pivot coefficient is one; halving is doubling mod 3
+            long swap = ones;
+            ones = twos;
+            twos = swap;
+            constant = 2 * constant % 3;
+        }
+        // Eliminate the new pivot from every other row
+        for (long rows = pivotMask; rows != 0; rows &= rows - 1) {
+            int row = offset + Long.numberOfTrailingZeros(rows);
+            long rowOnesValue = rowOnes[row];
+            long rowTwosValue = rowTwos[row];
+            if (((rowOnesValue | rowTwosValue) & bit) == 0) {
+                continue;
+            }
+            if ((rowOnesValue & bit) != 0) {
+                rowOnes[row] = add1(rowOnesValue, rowTwosValue, twos, ones);
+                rowTwos[row] = add2(rowOnesValue, rowTwosValue, twos, ones);
+                rowConstants[row] = (rowConstants[row] + 2 * constant) % 3;
+            } else {
+                rowOnes[row] = add1(rowOnesValue, rowTwosValue, ones, twos);
+                rowTwos[row] = add2(rowOnesValue, rowTwosValue, ones, twos);
+                rowConstants[row] = (rowConstants[row] + constant) % 3;
+            }
+        }
+        rowOnes[offset + pivot] = ones;
+        rowTwos[offset + pivot] = twos;
+        rowConstants[offset + pivot] = constant;
+        pivots[depth] = pivotMask | bit;
+        return true;
+    }
+
+    /**
+     * Count the presses fixed by the system for a depth, those whose rows name no free press. Every
+     * solution of the system makes at least these presses.
+     */
+    private int lowerBound(int depth) {
+        int offset = depth * width * height;
+        long pivotMask = pivots[depth];
+        int bound = 0;
+        for (long rows = pivotMask; rows != 0; rows &= rows - 1) {
+            int row = offset + Long.numberOfTrailingZeros(rows);
+            if (((rowOnes[row] | rowTwos[row]) & ~pivotMask) == 0) {
+                bound += rowConstants[row];
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Try every solution of the system for a depth, or those made from its first
+     * MAX_MINIMISE_NULLITY free presses if it has more
+     */
+    private void minimise(int depth) {
+        int cells = width * height;
+        int offset = depth * cells;
+        long pivotMask = pivots[depth];
+        long free = ~pivotMask & (cells == 64 ? -1L : (1L << cells) - 1);
+        // With every free press zero, each pivot press is its row's constant
+        long ones = 0;
+        long twos = 0;
+        for (long rows = pivotMask; rows != 0; rows &= rows - 1) {
+            int pivot = Long.numberOfTrailingZeros(rows);
+            if (rowConstants[offset + pivot] == 1) {
+                ones |= 1L << pivot;
+            } else if (rowConstants[offset + pivot] == 2) {
+                twos |= 1L << pivot;
+            }
+        }
+        // Pressing a free press once more changes each pivot press by minus its coefficient
+        int searched = 0;
+        for (long remaining = free; remaining != 0 && searched < MAX_MINIMISE_NULLITY; remaining &= remaining - 1) {
+            long bit = remaining & -remaining;
+            long vectorOnes = bit;
+            long vectorTwos = 0;
+            for (long rows = pivotMask; rows != 0; rows &= rows - 1) {
+                int pivot = Long.numberOfTrailingZeros(rows);
+                if ((rowOnes[offset + pivot] & bit) != 0) {
+                    vectorTwos |= 1L << pivot;
+                } else if ((rowTwos[offset + pivot] & bit) != 0) {
+                    vectorOnes |= 1L << pivot;
+                }
+            }
+            nullOnes[searched] = vectorOnes;
+            nullTwos[searched] = vectorTwos;
+            digits[searched] = 0;
+            searched++;
+        }
+
+        // Count through every combination in base 3, adding a vector each time its digit changes.
+        // A digit wrapping from two to zero has had its vector added three times, which is none.
+        this.consider(ones, twos);
+        while (true) {
+            int i = 0;
+            while (i < searched && digits[i] == 2) {
+                digits[i] = 0;
+                long sum = add1(ones, twos, nullOnes[i], nullTwos[i]);
+                twos = add2(ones, twos, nullOnes[i], nullTwos[i]);
+                ones = sum;
+                i++;
+            }
+            if (i == searched) {
+                return;
+            }
+            digits[i]++;
+            long sum = add1(ones, twos, nullOnes[i], nullTwos[i]);
+            twos = add2(ones, twos, nullOnes[i], nullTwos[i]);
+            ones = sum;
+            this.consider(ones, twos);
+        }
+    }
+
+    private void consider(long ones, long twos) {
+        int presses = Long.bitCount(ones) + 2 * Long.bitCount(twos);
+        if (best == -1 || presses < best) {
+            best = presses;
+            bestOnes = ones;
+            bestTwos = twos;
+        }
+    }
+
+    /**
+     * Cells of a + b (mod 3) which equal 1. Each vector is given as its cells equal to 1 then its
+     * cells equal to 2.
+     */
+    private static long add1(long aOnes, long aTwos, long bOnes, long bTwos) {
+        long aZeros = ~(aOnes | aTwos);
+        long bZeros = ~(bOnes | bTwos);
+        return (aOnes & bZeros) | (aZeros & bOnes) | (aTwos & bTwos);
+    }
+
+    /**
+     * Cells of a + b (mod 3) which equal 2. Each vector is given as its cells equal to 1 then its
+     * cells equal to 2.
+     */
+    private static long add2(long aOnes, long aTwos, long bOnes, long bTwos) {
+        long aZeros = ~(aOnes | aTwos);
+        long bZeros = ~(bOnes | bTwos);
+        return (aTwos & bZeros) | (aZeros & bTwos) | (aOnes & bOnes);
+    }
+
+    /**
+     * The reduced system for one size of board and topology
+     */
+    private static class Basis {
+        /**
+         * Presses which produce the hits needed for each single cell, as far as the system allows.
+         * Solving is linear, so summing these for every cell of a solvable target solves it.
+         */
+        private final long[] particularOnes;
+        private final long[] particularTwos;
+        /**
+         * What remains of each single cell target once reduced. A target is solvable exactly when
+         * the sum over its cells is zero.
+         */
+        private final long[] residualOnes;
+        private final long[] residualTwos;
+        /**
+         * Every combination of null vectors, including the empty one
+         */
+        private final long[] nullCombinationOnes;
+        private final long[] nullCombinationTwos;
+        /**
+         * Number of independent null vectors, of which at most MAX_MINIMISE_NULLITY are searched
+         */
+        private final int nullity;
+        /**
+         * The presses which would hit each cell
+         */
+        private final long[] neighbourhoods;
+
+        private Basis(ToggleMasks masks) {
+            int cells = masks.getWidth() * masks.getHeight();
+            // The cells hit by pressing each cell, and from them the presses hitting each cell
+            long[] hits = new long[cells];
+            neighbourhoods = new long[cells];
+            int[] toggled = new int[masks.getMaxToggled()];
+            for (int cell = 0; cell < cells; cell++) {
+                int count = masks.getToggledCells(cell / masks.getWidth(), cell % masks.getWidth(), toggled);
+                for (int i = 0; i < count; i++) {
+                    hits[cell] |= 1L << toggled[i];
+                    neighbourhoods[toggled[i]] |= 1L << cell;
+                }
+            }
+
+            // Insert the hits of pressing each cell once, reducing each against those before it.
+            // Each pivot is scaled so its pivot cell is 1.
+            long[] pivotOnes = new long[cells];
+            long[] pivotTwos = new long[cells];
+            long[] preimageOnes = new long[cells];
+            long[] preimageTwos = new long[cells];
+            int[] pivotCells = new int[cells];
+            int pivotCount = 0;
+            long[] nullOnes = new long[cells];
+            long[] nullTwos = new long[cells];
+            int nullity = 0;
+
+            for (int cell = 0; cell < cells; cell++) {
+                long ones = hits[cell];
+                long twos = 0;
+                long pressOnes = 1L << cell;
+                long pressTwos = 0;
+                for (int i = 0; i < pivotCount; i++) {
+                    long pivotBit = 1L << pivotCells[i];
+                    if ((ones & pivotBit) != 0) {
+                        // Subtract the pivot once
+                        long o = add1(ones, twos, pivotTwos[i], pivotOnes[i]);
+                        twos = add2(ones, twos, pivotTwos[i], pivotOnes[i]);
+                        ones = o;
+                        o = add1(pressOnes, pressTwos, preimageTwos[i], preimageOnes[i]);
+                        pressTwos = add2(pressOnes, pressTwos, preimageTwos[i], preimageOnes[i]);
+                        pressOnes = o;
+                    } else if ((twos & pivotBit) != 0) {
+                        // Subtract the pivot twice, which is adding it once
+                        long o = add1(ones, twos, pivotOnes[i], pivotTwos[i]);
+                        twos = add2(ones, twos, pivotOnes[i], pivotTwos[i]);
+                        ones = o;
+                        o = add1(pressOnes, pressTwos, preimageOnes[i], preimageTwos[i]);
+                        pressTwos = add2(pressOnes, pressTwos, preimageOnes[i], preimageTwos[i]);
+                        pressOnes = o;
+                    }
+                }
+
+                if ((ones | twos) == 0) {
+                    nullOnes[nullity] = pressOnes;
+                    nullTwos[nullity] = pressTwos;
+                    nullity++;
+                    continue;
+                }
+                int pivotCell = Long.numberOfTrailingZeros(ones | twos);
+                if ((twos & (1L << pivotCell)) != 0) {
+                    // Scale by 2 so the pivot cell becomes 1
+                    long swap = ones;
+                    ones = twos;
+                    twos = swap;
+                    swap = pressOnes;
+                    pressOnes = pressTwos;
+                    pressTwos = swap;
+                }
+                pivotOnes[pivotCount] = ones;
+                pivotTwos[pivotCount] = twos;
+                preimageOnes[pivotCount] = pressOnes;
+                preimageTwos[pivotCount] = pressTwos;
+                pivotCells[pivotCount] = pivotCell;
+                pivotCount++;
+            }
+
+            // Reduce each single cell target to find its particular solution
+            particularOnes = new long[cells];
+            particularTwos = new long[cells];
+            residualOnes = new long[cells];
+            residualTwos = new long[cells];
+            for (int cell = 0; cell < cells; cell++) {
+                long ones = 1L << cell;
+                long twos = 0;
+                long pressOnes = 0;
+                long pressTwos = 0;
+                for (int i = 0; i < pivotCount; i++) {
+                    long pivotBit = 1L << pivotCells[i];
+                    if ((ones & pivotBit) != 0) {
+                        long o = add1(ones, twos, pivotTwos[i], pivotOnes[i]);
+                        twos = add2(ones, twos, pivotTwos[i], pivotOnes[i]);
+                        ones = o;
+                        o = add1(pressOnes, pressTwos, preimageOnes[i], preimageTwos[i]);
+                        pressTwos = add2(pressOnes, pressTwos, preimageOnes[i], preimageTwos[i]);
+                        pressOnes = o;
+                    } else if ((twos & pivotBit) != 0) {
+                        long o = add1(ones, twos, pivotOnes[i], pivotTwos[i]);
+                        twos = add2(ones, twos, pivotOnes[i], pivotTwos[i]);
+                        ones = o;
+                        o = add1(pressOnes, pressTwos, preimageTwos[i], preimageOnes[i]);
+                        pressTwos = add2(pressOnes, pressTwos, preimageTwos[i], preimageOnes[i]);
+                        pressOnes = o;
+                    }
+                }
+                particularOnes[cell] = pressOnes;
+                particularTwos[cell] = pressTwos;
+                residualOnes[cell] = ones;
+                residualTwos[cell] = twos;
+            }
+
+            this.nullity = nullity;
+            // Every combination of null vectors, used to find the minimal solution
+            int searched = Math.min(nullity, MAX_MINIMISE_NULLITY);
+            int combinations = 1;
+            for (int i = 0; i < searched; i++) {
+                combinations *= 3;
+            }
+            nullCombinationOnes = new long[combinations];
+            nullCombinationTwos = new long[combinations];
+            for (int combination = 0; combination < combinations; combination++) {
+                long ones = 0;
+                long twos = 0;
+                int digits = combination;
+                for (int i = 0; i < searched; i++) {
+                    int multiple = digits % 3;
+                    digits /= 3;
+                    for (int repeat = 0; repeat < multiple; repeat++) {
+                        long o = add1(ones, twos, nullOnes[i], nullTwos[i]);
+                        twos = add2(ones, twos, nullOnes[i], nullTwos[i]);
+                        ones = o;
+                    }
+                }
+                nullCombinationOnes[combination] = ones;
+                nullCombinationTwos[combination] = twos;
+            }
+        }
+    }
+}
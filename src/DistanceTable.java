@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The fewest presses needed to solve every one of the 2^25 normal 5x5 boards, stored in a file at
+ * 4 bits per board (16 MB) and memory-mapped so any board can be looked up in constant time.
+ * <p>
+ * Boards are indexed by their packed representation (see PackedBoard). Each byte holds two
+ * boards; the even board in the low nibble and the odd board in the high nibble. No solvable board
+ * needs more than 15 presses, so the nibble 15 is shared by boards needing exactly 15 presses and
+ * by unsolvable boards, which are told apart with LightsOutSolver.isSolvablePacked.
+ * <p>
+ * Build, check or summarise the table from the command line with:
+ * java -cp ./src DistanceTable generate|verify|stats [file]
+ */
+public class DistanceTable {
+    /**
+     * Where the table is read from unless another file is given
+     */
+    public static final String DEFAULT_PATH = "distances.bin";
+    private static final byte[] MAGIC = {'L', 'O', 'D', 'I', 'S', 'T', '0', '1'};
+    private static final int BOARDS = 1 << PackedBoard.CELLS;
+    private static final int DATA_SIZE = BOARDS / 2;
+    private static final int UNSOLVABLE = 15;
+    /**
+     * Boards solved by each task while generating or verifying
+     */
+    private static final int CHUNK = 1 << 16;
+
+    private static DistanceTable defaultTable;
+    private static boolean defaultLoaded = false;
+
+    private final ByteBuffer data;
+
+    private DistanceTable(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * Memory-map a table which has already been generated
+     *
+     * @param file The table file
+     * @return DistanceTable reading from the file
+     * @throws IOException Where the file cannot be read or is not a distance table
+     */
+    public static DistanceTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != MAGIC.length + DATA_SIZE) {
+                throw new IOException("Not a distance table: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (mapped.get(i) != MAGIC[i]) {
+                    throw new IOException("Not a distance table: " + file);
+                }
+            }
+            // The mapping stays valid after the channel is closed
+            return new DistanceTable(mapped.position(MAGIC.length).slice());
+        }
+    }
+
+    /**
+     * Retrieve the table stored at DEFAULT_PATH, if it has been generated
+     *
+     * @return DistanceTable, or null if there is no usable table
+     */
+    public static synchronized DistanceTable getDefault() {
+        if (!defaultLoaded) {
+            defaultLoaded = true;
+            Path file = Paths.get(DEFAULT_PATH);
+            if (Files.exists(file)) {
+                try {
+                    defaultTable = open(file);
+                } catch (IOException error) {
+                    // Not reported to the user as the table is optional
+                    System.out.println("Failed to open distance table due to error");
+                    error.printStackTrace();
+                }
+            }
+        }
+        return defaultTable;
+    }
+
+    /**
+     * Solve every board in parallel and write the table to a file
+     *
+     * @param file Where to write the table
+     * @throws IOException Where the file cannot be written
+     */
+    public static void generate(Path file) throws IOException {
+        byte[] table = new byte[DATA_SIZE];
+        // Each chunk covers whole bytes, so no two tasks write to the same byte
+        IntStream.range(0, BOARDS / CHUNK).parallel().forEach(chunk -> {
+            int start = chunk * CHUNK;
+            for (int board = start; board < start + CHUNK; board += 2) {
+                table[board >>> 1] = (byte) (encode(board) | encode(board + 1) << 4);
+            }
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(MAGIC));
+            channel.write(ByteBuffer.wrap(table));
+        }
+    }
+
+    private static int encode(int board) {
+        int moves = LightsOutSolver.minimumMovesPacked(board);
+        return moves == -1 ? UNSOLVABLE : moves;
+    }
+
+    /**
+     * Look up the fewest presses needed to solve a packed board
+     *
+     * @param board Packed board, as described in PackedBoard
+     * @return int number of presses, or -1 if the board is unsolvable
+     */
+    public int movesToSolve(int board) {
+        int moves = (data.get(board >>> 1) >>> ((board & 1) << 2)) & 0xF;
+        if (moves == UNSOLVABLE && !LightsOutSolver.isSolvablePacked(board)) {
+            return -1;
+        }
+        return moves;
+    }
+
+    /**
+     * Look up the fewest presses needed to solve a board
+     *
+     * @param board A 5x5 board
+     * @return int number of presses, or -1 if the board is unsolvable
+     */
+    public int movesToSolve(NormalBoardState board) {
+        return this.movesToSolve(board.toPacked());
+    }
+
+    /**
+     * Check every entry of the table against an independent breadth-first search from the solved
+     * board, which shares no code with the solver used by generate. Presses commute and undo
+     * themselves, so the depth at which the search first reaches a board is the fewest presses
+     * which solve it, and boards it never reaches are unsolvable. Solvability is also checked
+     * against the syndrome test used by BoardEditor.isSolvable.
+     *
+     * @return int number of boards whose entry disagrees with the search or the syndrome test
+     */
+    public int verify() {
+        byte[] depths = searchFromSolved();
+        return IntStream.range(0, BOARDS / CHUNK).parallel().map(chunk -> {
+            LightsOutSolver solver = new LightsOutSolver(PackedBoard.SIZE, PackedBoard.SIZE);
+            NormalBoardState state = new NormalBoardState(PackedBoard.SIZE, PackedBoard.SIZE);
+            int mismatches = 0;
+            int start = chunk * CHUNK;
+            for (int board = start; board < start + CHUNK; board++) {
+                state.setPacked(board);
+                boolean solvable = depths[board] != -1;
+                if (this.movesToSolve(board) != depths[board] || (solver.syndrome(state) == 0) != solvable) {
+                    mismatches++;
+                }
+            }
+            return mismatches;
+        }).sum();
+    }
+
+    /**
+     * Find the fewest presses which solve every board by searching outwards from the solved board
+     * one press at a time
+     *
+     * @return byte[] holding the number of presses for each packed board, or -1 where no number of
+     * presses solves it
+     */
+    private static byte[] searchFromSolved() {
+        // Built from the rules rather than taken from PackedBoard, so the search stays independent
+        int[] pressMasks = new int[PackedBoard.CELLS];
+        for (int row = 0; row < PackedBoard.SIZE; row++) {
+            for (int column = 0; column < PackedBoard.SIZE; column++) {
+                int mask = PackedBoard.bit(row, column);
+                mask |= row > 0 ? PackedBoard.bit(row - 1, column) : 0;
+                mask |= row + 1 < PackedBoard.SIZE ? PackedBoard.bit(row + 1, column) : 0;
+                mask |= column > 0 ? PackedBoard.bit(row, column - 1) : 0;
+                mask |= column + 1 < PackedBoard.SIZE ? PackedBoard.bit(row, column + 1) : 0;
+                pressMasks[PackedBoard.index(row, column)] = mask;
+            }
+        }
+
+        byte[] depths = new byte[BOARDS];
+        Arrays.fill(depths, (byte) -1);
+        depths[0] = 0;
+        boolean reachedMore = true;
+        for (byte depth = 1; reachedMore; depth++) {
+            reachedMore = false;
+            // Every board at the previous depth is pressed once more in each cell
+            for (int board = 0; board < BOARDS; board++) {
+                if (depths[board] == depth - 1) {
+                    for (int mask : pressMasks) {
+                        if (depths[board ^ mask] == -1) {
+                            depths[board ^ mask] = depth;
+                            reachedMore = true;
+                        }
+                    }
+                }
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Count how many boards need each number of presses
+     *
+     * @return long[] of 17 entries. Entry n counts boards needing n presses; the last entry counts
+     * unsolvable boards.
+     */
+    public long[] histogram() {
+        long[] counts = new long[UNSOLVABLE + 2];
+        for (int board = 0; board < BOARDS; board++) {
+            int moves = this.movesToSolve(board);
+            counts[moves == -1 ? counts.length - 1 : moves]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Generate, verify or summarise a table
+     *
+     * @param args The command - generate, verify or stats - then optionally the table file
+     * @throws IOException Where the table cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: DistanceTable generate|verify|stats [file]");
+            return;
+        }
+        Path file = Paths.get(args.length > 1 ? args[1] : DEFAULT_PATH);
+        switch (args[0]) {
+            case "generate":
+                long start = System.nanoTime();
+                generate(file);
+                System.out.println("Generated " + file + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+                break;
+            case "verify":
+                int mismatches = open(file).verify();
+                System.out.println(mismatches == 0 ? "Table matches search" : mismatches + " entries do not match");
+                if (mismatches != 0) {
+                    System.exit(1);
+                }
+                break;
+            case "stats":
+                long[] counts = open(file).histogram();
+                for (int moves = 0; moves <= UNSOLVABLE; moves++) {
+                    System.out.println(moves + " presses: " + counts[moves]);
+                }
+                System.out.println("Unsolvable: " + counts[counts.length - 1]);
+                break;
+            default:
+                System.out.println("Unknown command: " + args[0]);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 import javax.swing.*;
 import java.awt.*;
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Represents a play of the game. Can have a time limit, but cannot support the Coloured variant.
@@ -10,26 +10,44 @@ public class Game implements BoardConsumer {
     private static final Dimension GAME_SIZE = new Dimension(500, 700);
     private static final Dimension BOTTOM_SIZE = new Dimension(300, 190);
     /**
-     * In milliseconds. 1000ms = 1s
+     * In milliseconds. The time left is shown in red once it is this low.
      */
-    private static final int UPDATE_DELAY = 1000;
+    private static final long WARNING_TIME = 10_000;
     private final JLabel moveDisplay;
+    private final JLabel timeTaken;
+    private final UndoControls undoControls;
     private final JPanel gamePanel;
     private final JLabel levelLabel;
     private final JFrame parent;
     private final JPanel bottom;
 
     /**
-     * Represents when time when the current level was started
+     * Times the current level. Callbacks run on the Event Dispatch Thread.
      */
-    private LocalDateTime start;
-    private Timer textUpdater = null;
+    private final GameClock clock = new GameClock(SwingUtilities::invokeLater);
+    /**
+     * Every press made on the current level, with when it was made
+     */
+    private MoveLog moveLog = null;
     private Board board;
+    /**
+     * The level being read in the background, or null once it is shown. Only used on the Event
+     * Dispatch Thread.
+     */
+    private CompletableFuture<Level> loading = null;
+    /**
+     * Whether start was called while a level was still being read, so it runs once it is shown
+     */
+    private boolean startWhenShown = false;
     private int currentLevel;
     private int moveCount = 0;
 
     private int timeLimit = 0;
     private boolean timeLimitEnabled = false;
+    /**
+     * Used to show the fewest presses left to solve the board. Null if no table has been generated.
+     */
+    private final DistanceTable distances = DistanceTable.getDefault();
 
     /**
      * Creates a new game with the given parent and initial level
@@ -91,57 +109,17 @@ public class Game implements BoardConsumer {
         bottom.setOpaque(false);
 
         moveDisplay = new JLabel();
-        moveDisplay.setText("Moves: 0");
+        this.updateMoveDisplay();
 
-        JLabel timeTaken = new JLabel();
+        timeTaken = new JLabel();
         timeTaken.setText("Time taken: 00:00");
 
-        // Timer will update the text every second - 1000ms.
-        // A startTime is used to prevent any slipping from actual time.
-        textUpdater = new Timer(UPDATE_DELAY, e -> {
-            // Variables used for display and calculations
-            LocalDateTime now = LocalDateTime.now();
-            Duration elapsed = Duration.between(start, now);
-            int seconds = elapsed.toSecondsPart();
-            int minutes = elapsed.toMinutesPart();
-
-            // Default time taken string
-            String timeTakenStr = "Time taken: " + minutes + ":" + seconds;
-            if (!timeLimitEnabled) {
-                timeTaken.setText(timeTakenStr);
-            } else {
-                // Time limit is enabled - work out if they have time remaining and display time left
-                LocalDateTime finishTime = start.plusSeconds(timeLimit);
-                Duration durationTillEnd = Duration.between(now, finishTime);
-
-                int secondsLeft = durationTillEnd.toSecondsPart();
-                int minutesLeft = durationTillEnd.toMinutesPart();
-
-                if (now.isAfter(finishTime)) {
-                    // Time is up
-                    timeTaken.setText("Times up!");
-                    if (textUpdater != null) {
-                        textUpdater.stop();
-                    }
-
-                    this.board.disable();
-                    // todo: show popup to indicate failure
-                } else {
-                    timeTaken.setText(timeTakenStr + " - " + minutesLeft + ":" + secondsLeft + " left");
-
-                    if (durationTillEnd.toSeconds() <= 10) {
-                        timeTaken.setForeground(Color.red);
-                    }
-                }
-
-            }
-
-        });
-
-        textUpdater.setRepeats(true);
+        undoControls = new UndoControls(() -> this.board);
+        undoControls.bindKeys(gamePanel);
 
         bottom.add(moveDisplay, BorderLayout.LINE_START);
         bottom.add(timeTaken, BorderLayout.LINE_END);
+        bottom.add(undoControls, BorderLayout.PAGE_START);
 
         // Strut for spacing
         parent.add(levelLabel);
@@ -155,28 +133,119 @@ public class Game implements BoardConsumer {
      * Start this game, reset applicable state and start the game timer.
      */
     public void start() {
-        start = LocalDateTime.now();
-        textUpdater.start();
+        if (loading != null || this.board == null) {
+            // Started again once the level being read is shown
+            startWhenShown = true;
+            return;
+        }
+        startWhenShown = false;
+        clock.start();
         moveCount = 0;
+        // Moves made before the level started, such as in the board editor, cannot be undone
+        this.board.clearHistory();
+        undoControls.update();
+        BoardState state = this.board.getState();
+        if (moveLog == null || moveLog.getWidth() != state.getWidth() || moveLog.getHeight() != state.getHeight()) {
+            moveLog = new MoveLog(state.getWidth(), state.getHeight());
+        } else {
+            moveLog.clear();
+        }
+        timeTaken.setForeground(moveDisplay.getForeground());
+        this.scheduleDeadline();
+        // The display is refreshed as each second passes, timed from the start so it never slips
+        clock.startTicks(this::updateTimeDisplay);
+        this.updateTimeDisplay();
+    }
+
+    /**
+     * Set the clock to end the level exactly when the time limit is reached, if it is enabled
+     */
+    private void scheduleDeadline() {
+        if (timeLimitEnabled && timeLimit > 0) {
+            clock.setDeadline(timeLimit * 1_000_000_000L, this::setTimeUp);
+        } else {
+            clock.cancelDeadline();
+        }
+    }
+
+    /**
+     * End the level as the time limit has been reached
+     */
+    private void setTimeUp() {
+        clock.stop();
+        timeTaken.setText("Times up!");
+        this.board.disable();
+
+        //create popup to display failure message
+        JPopupMenu timeUpPopup = new JPopupMenu();
+        timeUpPopup.setPreferredSize(new Dimension(300, 300));
+
+        //create failure message
+        JLabel timeUpMessage = new JLabel("Times up!");
+        timeUpMessage.setFont(new Font("", Font.PLAIN, 24));
+        timeUpMessage.setAlignmentX(Component.CENTER_ALIGNMENT);
+        timeUpPopup.add(timeUpMessage);
+
+        // -1 means level progression is disabled, so there is no level to read again
+        if (this.currentLevel != -1) {
+            //create button to try the current level again
+            JButton retryButton = new JButton("Retry level " + this.currentLevel);
+            retryButton.setAlignmentX(Component.CENTER_ALIGNMENT);
+            retryButton.setPreferredSize(new Dimension(160, 50));
+            retryButton.setMaximumSize(new Dimension(160, 50));
+            retryButton.setFont(new Font("", Font.PLAIN, 18));
+            retryButton.addActionListener(e -> {
+                //remove popup
+                timeUpPopup.setVisible(false);
+                this.setLevelFromFile();
+                this.start();
+            });
+
+            timeUpPopup.add(Box.createVerticalGlue());
+            timeUpPopup.add(retryButton);
+            timeUpPopup.add(Box.createVerticalGlue());
+        }
+
+        //display popup
+        timeUpPopup.show(parent, 250, 115);
+    }
+
+    /**
+     * Update the time taken, and the time left where the time limit is enabled
+     */
+    private void updateTimeDisplay() {
+        long elapsed = clock.getElapsedMillis();
+        String text = "Time taken: " + GameClock.format(elapsed);
+        if (timeLimitEnabled && timeLimit > 0) {
+            long remaining = timeLimit * 1000L - elapsed;
+            // Round up, so the time left only reads 00:00 when the time is up
+            text += " - " + GameClock.format(remaining + 999) + " left";
+            if (remaining <= WARNING_TIME) {
+                timeTaken.setForeground(Color.red);
+            }
+        }
+        timeTaken.setText(text);
     }
 
     /**
      * Display popup and move onto the next level if enabled
      */
     public void setWon() {
-        this.start();
+        // Keep the completion time, and the time of each move, until the next level is started
+        clock.stop();
+        this.updateTimeDisplay();
 
         // -1 means level progression is disabled
         if (this.currentLevel != -1) {
 
-            //if current level is 15, display a win message with no options
-            if (this.currentLevel == 15) {
+            //if current level is the last one, display a win message with no options
+            if (this.currentLevel >= this.getLevelCount()) {
                 //create popup to display final win message
                 JPopupMenu finalWinPopup = new JPopupMenu();
                 finalWinPopup.setPreferredSize(new Dimension(300, 300));
 
                 //create final win message
-                JLabel winMessage = new JLabel("Level 15 complete!");
+                JLabel winMessage = new JLabel("Level " + this.currentLevel + " complete!");
                 winMessage.setFont(new Font("", Font.PLAIN, 24));
                 winMessage.setAlignmentX(Component.CENTER_ALIGNMENT);
 
@@ -219,14 +288,13 @@ public class Game implements BoardConsumer {
                         this.currentLevel++;
                         
                         this.updateLevelDisplay();
-                        //remove previous board
-                        gamePanel.remove(board.getBoard());
 
                         //remove popup
                         winPopup.setVisible(false);
 
                         try {
                             this.setLevelFromFile();
+                            this.start();
 
                         } catch (Exception err) {
                             System.out.println("Failed to find next board ");
@@ -244,14 +312,13 @@ public class Game implements BoardConsumer {
                 stayButton.addActionListener(e -> {
                     try {
                         this.updateLevelDisplay();
-                        //remove previous board
-                        gamePanel.remove(board.getBoard());
 
                         //remove popup
                         winPopup.setVisible(false);
 
                         try {
                             this.setLevelFromFile();
+                            this.start();
 
                         } catch (Exception err) {
                             System.out.println("Failed to find next board ");
@@ -302,7 +369,7 @@ public class Game implements BoardConsumer {
      * Performs cleanup of timers etc.
      */
     public void cleanUp() {
-        textUpdater.stop();
+        clock.stop();
         this.parent.remove(this.getPanel());
         this.parent.remove(levelLabel);
         this.parent.remove(bottom);
@@ -332,6 +399,7 @@ public class Game implements BoardConsumer {
      */
     public void enableTimeLimit() {
         this.timeLimitEnabled = true;
+        this.scheduleDeadline();
     }
 
     /**
@@ -339,21 +407,78 @@ public class Game implements BoardConsumer {
      */
     public void disableTimeLimit() {
         this.timeLimitEnabled = false;
+        clock.cancelDeadline();
     }
 
     /**
-     * Update move display and run setWon if the board has been solved
-     * Called whenever a button in the board is clicked
+     * Count a move and record when it was made. Called whenever a button in the board is clicked;
+     * the display is updated once the board has displayed the click in handleBatchUpdate.
+     *
+     * @param row    Row position of the button which was clicked
+     * @param column Column position of the button which was clicked
      */
     @Override
-    public void handleUpdate() {
+    public void handleUpdate(int row, int column) {
         this.moveCount++;
-        this.moveDisplay.setText("Moves: " + this.moveCount);
+        int time = clock.recordMove();
+        // Presses are only logged once the game has been started
+        if (moveLog != null) {
+            moveLog.record(row, column, time);
+        }
+    }
+
+    /**
+     * Take back or count again a move which was undone or redone, and record it in the move log
+     *
+     * @param row    Row position of the button whose press was undone or redone
+     * @param column Column position of the button whose press was undone or redone
+     * @param redone Whether the press was redone rather than undone
+     */
+    @Override
+    public void handleUndo(int row, int column, boolean redone) {
+        this.moveCount += redone ? 1 : -1;
+        if (moveLog != null) {
+            if (redone) {
+                moveLog.recordRedo(clock.getElapsedMillis());
+            } else {
+                moveLog.recordUndo(clock.getElapsedMillis());
+            }
+        }
+    }
+
+    /**
+     * Update move display and run setWon if the board has been solved
+     * Called once after each click, or after each batch of presses
+     */
+    @Override
+    public void handleBatchUpdate() {
+        this.updateMoveDisplay();
+        undoControls.update();
         if (this.board.isSolved()) {
             this.setWon();
         }
     }
 
+    /**
+     * Updates the move display on the UI. Where a DistanceTable has been generated and the board is
+     * a standard normal board using the standard topology, the fewest presses left to solve it are
+     * also shown.
+     */
+    private void updateMoveDisplay() {
+        String text = "Moves: " + this.moveCount;
+        // There is no board until the first level has been read
+        BoardState state = this.board != null ? this.board.getState() : null;
+        if (distances != null && state instanceof NormalBoardState
+                && state.getWidth() == PackedBoard.SIZE && state.getHeight() == PackedBoard.SIZE
+                && state.getTopology().isStandard()) {
+            int remaining = distances.movesToSolve((NormalBoardState) state);
+            if (remaining >= 0) {
+                text += " (best: " + remaining + " left)";
+            }
+        }
+        this.moveDisplay.setText(text);
+    }
+
     /**
      * Updates the level display on the UI
      * It is within a separate method to allow it to be overridden.
@@ -364,15 +489,81 @@ public class Game implements BoardConsumer {
 
 
     /**
-     * Retrieves the current level from file
+     * Retrieve the number of levels available, used to tell when the final level is complete.
+     * It is within a separate method to allow it to be overridden.
+     *
+     * @return int number of the last level
+     */
+    protected int getLevelCount() {
+        return LevelReader.countLevels(false);
+    }
+
+    /**
+     * Retrieves the current level from the level cache and shows it once it is ready, reading it
+     * from the level pack or its file on a background thread if needed, and starts prefetching the
+     * next level. Where the level cannot be read, an error is shown instead.
+     */
+    protected void setLevelFromFile() {
+        this.showLevelWhenRead(LevelCache.getDefault().getAsync(this.currentLevel, false));
+        LevelCache.getDefault().prefetch(this.currentLevel + 1, false);
+    }
+
+    /**
+     * Show a level once it has been read, without waiting for it on the Event Dispatch Thread. A
+     * level already read is shown immediately. Where start is called before the level is shown,
+     * the game starts as soon as it is. Replaces any level still being read.
      *
-     * @throws Exception Where the level is missing or invalid
+     * @param level The level being read, such as from LevelCache.getAsync
      */
-    protected void setLevelFromFile() throws Exception {
-        Level levelInfo = LevelReader.readLevelFile("level" + this.currentLevel);
-        Button[][] buttons = levelInfo.getButtons();
-        this.board = new Board(this, true, buttons);
-        this.timeLimit = levelInfo.getTimeLimit();
+    protected void showLevelWhenRead(CompletableFuture<Level> level) {
+        loading = level;
+        if (level.isDone() && !level.isCompletedExceptionally() && SwingUtilities.isEventDispatchThread()) {
+            this.levelRead(level, level.getNow(null), null);
+            return;
+        }
+        level.whenComplete((levelInfo, error) ->
+                SwingUtilities.invokeLater(() -> this.levelRead(level, levelInfo, error)));
+    }
+
+    /**
+     * Show a level which has finished being read, unless another level has been asked for since
+     */
+    private void levelRead(CompletableFuture<Level> level, Level levelInfo, Throwable error) {
+        if (loading != level) {
+            return;
+        }
+        loading = null;
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            System.out.println("Failed to read level " + this.currentLevel + " due to error");
+            cause.printStackTrace();
+            startWhenShown = false;
+            JOptionPane.showMessageDialog(parent, cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        this.showLevel(levelInfo);
+        if (startWhenShown) {
+            this.start();
+        }
+    }
+
+    /**
+     * Display a level with the topology it was authored for and apply its time limit. The current
+     * board is reloaded in place where it is the same size, variant and topology as the level;
+     * otherwise it is replaced with a new board.
+     *
+     * @param level The level to display
+     */
+    protected void showLevel(Level level) {
+        BoardState state = level.toBoardState();
+        if (this.board == null || !this.board.reload(state)) {
+            if (this.board != null) {
+                gamePanel.remove(this.board.getBoard());
+            }
+            this.board = new Board(this, true, state);
+            gamePanel.revalidate();
+        }
+        this.timeLimit = level.getTimeLimit();
     }
 
     /**
@@ -394,6 +585,25 @@ public class Game implements BoardConsumer {
         this.board = board;
     }
 
+    /**
+     * Retrieve the clock timing the current level. The time of each move is kept in the move log.
+     *
+     * @return GameClock for the current level
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Retrieve the presses made on the current level, which can be replayed against the level to
+     * check a solve or reproduce a problem
+     *
+     * @return MoveLog for the current level
+     */
+    public MoveLog getMoveLog() {
+        return moveLog;
+    }
+
     /**
      * Retrieve the levelLabel which displays the currently active level
      *
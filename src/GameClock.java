@@ -0,0 +1,204 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times one play of a level using the monotonic System.nanoTime, so the clock never jumps when the
+ * wall clock is changed. Moves are timed to the millisecond, but the clock does not keep them, so
+ * it needs no storage which grows as the game is played.
+ * <p>
+ * A time limit is enforced with a single task which runs exactly when the limit is reached, rather
+ * than by checking the time every second. The display can also be refreshed once per elapsed
+ * second. Every clock shares one scheduler thread, so many games can be timed at once, and ticks
+ * reuse the same task rather than creating objects each second.
+ * <p>
+ * Callbacks are passed to the executor given when the clock is created, such as
+ * SwingUtilities::invokeLater to run them on the Event Dispatch Thread.
+ */
+public class GameClock {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private static ScheduledExecutorService scheduler;
+
+    private final Executor callbacks;
+    private long startTime;
+    private long stopTime;
+    private boolean running = false;
+    /**
+     * Incremented whenever the clock is started or stopped, so tasks scheduled beforehand which have
+     * already been queued on the callback executor know to do nothing
+     */
+    private volatile int generation = 0;
+    /**
+     * Incremented whenever the deadline is replaced or cancelled, so a deadline which has already
+     * been queued on the callback executor knows to do nothing
+     */
+    private volatile int deadlineGeneration = 0;
+    private ScheduledFuture<?> deadlineTask = null;
+    private ScheduledFuture<?> tickTask = null;
+
+    /**
+     * Create a stopped clock
+     *
+     * @param callbacks Executor to run deadline and tick callbacks on
+     */
+    public GameClock(Executor callbacks) {
+        this.callbacks = callbacks;
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "Game clock");
+                // Never keep the game open just to time it
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Cancelled deadlines would otherwise stay queued until they were due
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Start timing from now, forgetting any previous deadline and ticks
+     */
+    public synchronized void start() {
+        this.cancelTasks();
+        startTime = System.nanoTime();
+        running = true;
+    }
+
+    /**
+     * Stop the clock, freezing the elapsed time and cancelling the deadline and ticks
+     */
+    public synchronized void stop() {
+        if (running) {
+            stopTime = System.nanoTime();
+            running = false;
+        }
+        this.cancelTasks();
+    }
+
+    private void cancelTasks() {
+        generation++;
+        this.cancelDeadline();
+        if (tickTask != null) {
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+    }
+
+    /**
+     * Determines whether the clock is running
+     *
+     * @return boolean indicating if the clock has been started and not stopped
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Retrieve the time since the clock was started, or the time it ran for if stopped
+     *
+     * @return long elapsed time in nanoseconds
+     */
+    public synchronized long getElapsedNanos() {
+        return (running ? System.nanoTime() : stopTime) - startTime;
+    }
+
+    /**
+     * Retrieve the time since the clock was started, or the time it ran for if stopped
+     *
+     * @return long elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return this.getElapsedNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Run a callback once the clock has run for the given time. Replaces any previous deadline.
+     * Does nothing if the clock is not running.
+     *
+     * @param limitNanos Time from the start of the clock, in nanoseconds
+     * @param expired    Callback to run when the deadline is reached
+     */
+    public synchronized void setDeadline(long limitNanos, Runnable expired) {
+        this.cancelDeadline();
+        if (!running) {
+            return;
+        }
+        int scheduledGeneration = generation;
+        int scheduledDeadline = deadlineGeneration;
+        long delay = startTime + limitNanos - System.nanoTime();
+        deadlineTask = getScheduler().schedule(() -> callbacks.execute(() -> {
+            // The clock was restarted or stopped, or the deadline replaced or cancelled, after the
+            // deadline was reached but before this ran
+            if (generation == scheduledGeneration && deadlineGeneration == scheduledDeadline) {
+                expired.run();
+            }
+        }), Math.max(0, delay), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancel the deadline, if there is one
+     */
+    public synchronized void cancelDeadline() {
+        deadlineGeneration++;
+        if (deadlineTask != null) {
+            deadlineTask.cancel(false);
+            deadlineTask = null;
+        }
+    }
+
+    /**
+     * Run a callback each time another whole second has elapsed, until the clock is stopped or
+     * restarted. Ticks are timed from the start of the clock so they do not drift.
+     *
+     * @param tick Callback to run each second
+     */
+    public synchronized void startTicks(Runnable tick) {
+        if (!running) {
+            return;
+        }
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+        int scheduledGeneration = generation;
+        Runnable guarded = () -> {
+            if (generation == scheduledGeneration) {
+                tick.run();
+            }
+        };
+        Runnable post = () -> callbacks.execute(guarded);
+        long delay = NANOS_PER_SECOND - (System.nanoTime() - startTime) % NANOS_PER_SECOND;
+        tickTask = getScheduler().scheduleAtFixedRate(post, delay, NANOS_PER_SECOND, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieve the time of a move made now. The time is not stored; callers which need the time of
+     * each move, such as MoveLog, keep it themselves.
+     *
+     * @return int time of the move in milliseconds since the clock was started
+     */
+    public int recordMove() {
+        return (int) Math.min(Integer.MAX_VALUE, this.getElapsedMillis());
+    }
+
+    /**
+     * Format a time as minutes and seconds, each padded to two digits such as "03:07"
+     *
+     * @param millis Time in milliseconds. Negative times are shown as zero.
+     * @return String holding the formatted time
+     */
+    public static String format(long millis) {
+        long seconds = Math.max(0, millis) / 1000;
+        long minutes = seconds / 60;
+        seconds %= 60;
+        return (minutes < 10 ? "0" : "") + minutes + (seconds < 10 ? ":0" : ":") + seconds;
+    }
+}
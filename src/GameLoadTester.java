@@ -0,0 +1,217 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for many players at once to load test a GameServer. Each simulated player joins a
+ * normal level, asks for its lights, works out a solution with LightsOutSolver and presses it.
+ * Every player stays connected until all of them have finished.
+ * <p>
+ * Players are shared between a few threads. Each thread sends one press for each of its players,
+ * then reads every reply, so all players are in play at the same time.
+ * <p>
+ * Run from the command line with:
+ * java -cp ./src GameLoadTester [--port port] [--players count] [--threads count]
+ */
+public class GameLoadTester {
+    private final int port;
+    private final AtomicLong presses = new AtomicLong();
+    private final AtomicLong wins = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private GameLoadTester(int port) {
+        this.port = port;
+    }
+
+    /**
+     * One simulated player's connection
+     */
+    private static final class Player {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final OutputStream out;
+        /**
+         * Cells still to press, as row * width + column
+         */
+        private int[] presses;
+        private int next = 0;
+        private boolean finished = false;
+
+        private Player(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 256);
+            this.out = socket.getOutputStream();
+        }
+
+        private void send(String line) throws IOException {
+            out.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private String receive() throws IOException {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Server closed the connection");
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Connect a group of players, play every one to the end and disconnect them
+     */
+    private void play(int first, int count) {
+        List<Player> players = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                players.add(new Player(new Socket(InetAddress.getLoopbackAddress(), port)));
+            }
+            int levels = 0;
+            for (Player player : players) {
+                if (levels == 0) {
+                    player.send("LEVELS");
+                    levels = Integer.parseInt(player.receive().split(" ")[1]);
+                    if (levels == 0) {
+                        throw new IOException("Server has no levels");
+                    }
+                }
+                player.send("JOIN " + (1 + (first++ % levels)));
+                player.send("STATE");
+            }
+            for (Player player : players) {
+                this.expect(player.receive(), "LEVEL");
+                this.planSolution(player, player.receive());
+            }
+
+            boolean active = true;
+            while (active) {
+                active = false;
+                for (Player player : players) {
+                    if (!player.finished) {
+                        int width = player.presses[player.presses.length - 1];
+                        int cell = player.presses[player.next];
+                        player.send("PRESS " + cell / width + " " + cell % width);
+                    }
+                }
+                for (Player player : players) {
+                    if (player.finished) {
+                        continue;
+                    }
+                    String reply = player.receive();
+                    presses.incrementAndGet();
+                    player.next++;
+                    if (reply.startsWith("WON")) {
+                        wins.incrementAndGet();
+                        player.finished = true;
+                    } else if (!reply.startsWith("OK") || player.next == player.presses.length - 1) {
+                        errors.incrementAndGet();
+                        player.finished = true;
+                    } else {
+                        active = true;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException error) {
+            errors.incrementAndGet();
+            System.out.println("Player group failed: " + error.getMessage());
+        } finally {
+            for (Player player : players) {
+                try {
+                    player.send("QUIT");
+                    player.socket.close();
+                } catch (IOException error) {
+                    // Already disconnected
+                }
+            }
+        }
+    }
+
+    private void expect(String reply, String prefix) throws IOException {
+        if (!reply.startsWith(prefix)) {
+            throw new IOException("Expected " + prefix + " but got: " + reply);
+        }
+    }
+
+    /**
+     * Work out the presses which solve the lights in a STATE reply. The board width is stored
+     * after the presses.
+     */
+    private void planSolution(Player player, String state) throws IOException {
+        this.expect(state, "STATE");
+        String[] words = state.split(" ");
+        int width = Integer.parseInt(words[1]);
+        int height = Integer.parseInt(words[2]);
+        NormalBoardState board = new NormalBoardState(width, height);
+        for (int cell = 0; cell < width * height; cell++) {
+            board.setCell(cell / width, cell % width, words[3].charAt(cell) - '0');
+        }
+        NormalBoardState solution = new NormalBoardState(width, height);
+        if (!new LightsOutSolver(width, height).solve(board, solution)) {
+            throw new IOException("Level cannot be solved");
+        }
+        if (solution.isSolved()) {
+            throw new IOException("Level is already solved");
+        }
+        player.presses = new int[solution.getLitCount() + 1];
+        int index = 0;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                if (solution.isOn(row, column)) {
+                    player.presses[index++] = row * width + column;
+                }
+            }
+        }
+        player.presses[index] = width;
+    }
+
+    /**
+     * Run a load test against a server on this machine
+     *
+     * @param args --port, --players and --threads, each followed by a number
+     * @throws InterruptedException Where interrupted while waiting for the players
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int port = GameServer.DEFAULT_PORT;
+        int playerCount = 1000;
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--players":
+                    playerCount = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--threads":
+                    threadCount = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        GameLoadTester tester = new GameLoadTester(port);
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            int first = (int) ((long) playerCount * i / threadCount);
+            int count = (int) ((long) playerCount * (i + 1) / threadCount) - first;
+            threads[i] = new Thread(() -> tester.play(first, count), "Load test " + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println(playerCount + " players: " + tester.wins.get() + " won, " + tester.errors.get()
+                + " errors, " + tester.presses.get() + " presses in " + millis + "ms ("
+                + tester.presses.get() * 1000 / millis + " presses/s)");
+    }
+}
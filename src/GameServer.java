@@ -0,0 +1,575 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hosts games for many clients over TCP, each connection playing its own GameSession. Every
+ * connection is served by one thread using a Selector, so thousands of players cost a few hundred
+ * bytes each rather than a thread each, and time limits are ended by a queue of deadlines checked
+ * by the same thread. That thread never waits on the disk: levels are counted once at startup, and
+ * a level which is not in the LevelCache is read by the cache's background thread, the connection
+ * reading no further commands until it is ready.
+ * <p>
+ * The protocol is one ASCII command per line, each answered with one line:
+ * <ul>
+ *     <li>LEVELS - "LEVELS normal coloured", the number of levels of each variant</li>
+ *     <li>JOIN level [normal|coloured] [timed] - start a level, answered "LEVEL number width height
+ *     timeLimit"</li>
+ *     <li>PRESS row column - press a cell, counting from 0, answered "OK moves", "WON moves
+ *     millis" once every light is off, or "TIMEUP" if the time limit has passed</li>
+ *     <li>UNDO / REDO - answered "OK moves", or "ERR" if there was nothing to undo or redo</li>
+ *     <li>STATE - "STATE width height cells status moves", where cells holds each cell's state
+ *     as a digit in row order</li>
+ *     <li>RESTART / NEXT - restart the level, or move on to the next one, answered as JOIN</li>
+ *     <li>QUIT - close the connection</li>
+ * </ul>
+ * Where a timed level runs out the server also sends "TIMEUP" unprompted. Invalid commands are
+ * answered "ERR message".
+ * <p>
+ * Start the server from the command line with:
+ * java -cp ./src GameServer [port]
+ *
+ * @see GameLoadTester
+ */
+public class GameServer implements Closeable {
+    /**
+     * Port listened on when none is given
+     */
+    public static final int DEFAULT_PORT = 5225;
+    /**
+     * Longest command accepted, in bytes. Longer lines close the connection.
+     */
+    private static final int MAX_LINE = 128;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    /**
+     * Connections playing timed levels, soonest deadline first
+     */
+    private final PriorityQueue<Connection> deadlines =
+            new PriorityQueue<>((first, second) -> Long.compare(first.deadline, second.deadline));
+    /**
+     * Levels read in the background, waiting to be started by the serving thread
+     */
+    private final ConcurrentLinkedQueue<LevelRequest> loaded = new ConcurrentLinkedQueue<>();
+    private final StringBuilder reply = new StringBuilder();
+    private final int normalLevels;
+    private final int colouredLevels;
+    private volatile boolean running = true;
+    private boolean serving = false;
+    private int connections = 0;
+
+    /**
+     * Listen for players on the local machine
+     *
+     * @param port Port to listen on, or 0 to pick any free port
+     * @throws IOException Where the port cannot be listened on
+     */
+    public GameServer(int port) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        normalLevels = LevelReader.countLevels(false);
+        colouredLevels = LevelReader.countLevels(true);
+    }
+
+    /**
+     * Retrieve the port being listened on
+     *
+     * @return int port number
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Retrieve the number of players connected
+     *
+     * @return int number of open connections
+     */
+    public int getConnectionCount() {
+        return connections;
+    }
+
+    /**
+     * Serve players until close is called
+     *
+     * @throws IOException Where the selector fails
+     */
+    public void run() throws IOException {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            serving = true;
+        }
+        try {
+            this.serve();
+        } finally {
+            this.closeAll();
+        }
+    }
+
+    private void serve() throws IOException {
+        while (running) {
+            Connection next = deadlines.peek();
+            if (next == null) {
+                selector.select();
+            } else {
+                long wait = (next.deadline - System.nanoTime()) / 1_000_000;
+                if (wait > 0) {
+                    selector.select(wait);
+                } else {
+                    selector.selectNow();
+                }
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isAcceptable()) {
+                        this.accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            this.read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            this.flush(connection);
+                        }
+                    }
+                } catch (IOException error) {
+                    // The player has gone; other players are unaffected
+                    if (key.attachment() != null) {
+                        this.disconnect((Connection) key.attachment());
+                    }
+                }
+            }
+            LevelRequest request;
+            while ((request = loaded.poll()) != null) {
+                this.levelLoaded(request);
+            }
+            this.expireDeadlines();
+        }
+    }
+
+    /**
+     * Stop serving and disconnect every player. May be called from any thread.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            running = false;
+            if (serving) {
+                // The serving thread disconnects everyone as it stops
+                selector.wakeup();
+                return;
+            }
+        }
+        this.closeAll();
+    }
+
+    private void closeAll() throws IOException {
+        if (!selector.isOpen()) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections++;
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        connection.key.cancel();
+        deadlines.remove(connection);
+        connections--;
+        try {
+            connection.channel.close();
+        } catch (IOException error) {
+            // Already closed
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            this.disconnect(connection);
+            return;
+        }
+        this.handleLines(connection);
+    }
+
+    /**
+     * Carry out each complete command which has been read, stopping early while a level is being
+     * read so that replies are sent in order
+     */
+    private void handleLines(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        int lineStart = 0;
+        for (int i = 0; i < in.limit() && connection.loading == null; i++) {
+            if (in.get(i) == '\n') {
+                int end = i > lineStart && in.get(i - 1) == '\r' ? i - 1 : i;
+                String line = new String(in.array(), lineStart, end - lineStart, StandardCharsets.US_ASCII);
+                lineStart = i + 1;
+                if (!this.handle(connection, line)) {
+                    this.flush(connection);
+                    this.disconnect(connection);
+                    return;
+                }
+            }
+        }
+        in.position(lineStart);
+        in.compact();
+        if (!in.hasRemaining() && connection.loading == null) {
+            // A line longer than any command
+            this.disconnect(connection);
+            return;
+        }
+        this.flush(connection);
+    }
+
+    /**
+     * Carry out one command and queue its reply
+     *
+     * @return boolean indicating if the connection should stay open
+     */
+    private boolean handle(Connection connection, String line) {
+        String[] words = line.trim().split(" +");
+        GameSession session = connection.session;
+        reply.setLength(0);
+        try {
+            switch (words[0].toUpperCase()) {
+                case "LEVELS":
+                    reply.append("LEVELS ").append(normalLevels).append(' ').append(colouredLevels);
+                    break;
+                case "JOIN":
+                    if (words.length < 2) {
+                        throw new IllegalArgumentException("JOIN needs a level");
+                    }
+                    boolean coloured = false;
+                    boolean timed = false;
+                    for (int i = 2; i < words.length; i++) {
+                        switch (words[i].toLowerCase()) {
+                            case "coloured":
+                                coloured = true;
+                                break;
+                            case "normal":
+                                coloured = false;
+                                break;
+                            case "timed":
+                                timed = true;
+                                break;
+                            default:
+                                throw new IllegalArgumentException("Unknown option " + words[i]);
+                        }
+                    }
+                    int level = Integer.parseInt(words[1]);
+                    if (level < 1 || level > (coloured ? colouredLevels : normalLevels)) {
+                        throw new IllegalArgumentException("There is no level " + level);
+                    }
+                    this.requestLevel(connection, new LevelRequest(connection, level, coloured, timed, false));
+                    break;
+                case "PRESS":
+                    this.requireSession(session);
+                    if (words.length != 3) {
+                        throw new IllegalArgumentException("PRESS needs a row and column");
+                    }
+                    GameSession.Status status = session.press(Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+                    this.appendStatus(connection, status);
+                    break;
+                case "UNDO":
+                case "REDO":
+                    this.requireSession(session);
+                    boolean changed = words[0].equalsIgnoreCase("UNDO") ? session.undo() : session.redo();
+                    if (changed) {
+                        reply.append("OK ").append(session.getMoveCount());
+                    } else if (session.getStatus() == GameSession.Status.PLAYING) {
+                        reply.append("ERR Nothing to ").append(words[0].toLowerCase());
+                    } else {
+                        this.appendStatus(connection, session.getStatus());
+                    }
+                    break;
+                case "STATE":
+                    this.requireSession(session);
+                    BoardState state = session.getState();
+                    reply.append("STATE ").append(state.getWidth()).append(' ').append(state.getHeight()).append(' ');
+                    for (int row = 0; row < state.getHeight(); row++) {
+                        for (int column = 0; column < state.getWidth(); column++) {
+                            reply.append((char) ('0' + state.getCell(row, column)));
+                        }
+                    }
+                    reply.append(' ').append(session.getStatus()).append(' ').append(session.getMoveCount());
+                    break;
+                case "RESTART":
+                    this.requireSession(session);
+                    session.restartLevel();
+                    this.started(connection);
+                    break;
+                case "NEXT":
+                    this.requireSession(session);
+                    if (!session.hasNextLevel()) {
+                        throw new IllegalArgumentException("There is no next level");
+                    }
+                    this.requestLevel(connection,
+                            new LevelRequest(connection, session.getLevel() + 1, session.isColoured(), false, true));
+                    break;
+                case "QUIT":
+                    return false;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + words[0]);
+            }
+        } catch (Exception error) {
+            reply.setLength(0);
+            reply.append("ERR ").append(error.getMessage());
+        }
+        if (connection.loading == null) {
+            // Otherwise the reply is sent once the level has been read
+            this.send(connection, reply);
+        }
+        return true;
+    }
+
+    /**
+     * Start a level straight away if it is cached, otherwise read it in the background and stop
+     * handling the connection's commands until levelLoaded starts it
+     */
+    private void requestLevel(Connection connection, LevelRequest request) {
+        CompletableFuture<Level> future = LevelCache.getDefault().getAsync(request.level, request.coloured);
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            this.startLevel(request, future.join());
+            return;
+        }
+        connection.loading = request;
+        future.whenComplete((level, error) -> {
+            request.result = level;
+            request.error = error;
+            loaded.add(request);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Start a level which has been read in the background, then carry on with any commands which
+     * arrived meanwhile
+     */
+    private void levelLoaded(LevelRequest request) {
+        Connection connection = request.connection;
+        connection.loading = null;
+        if (!connection.key.isValid()) {
+            return;
+        }
+        reply.setLength(0);
+        if (request.error != null) {
+            reply.append("ERR ").append(request.error.getMessage());
+        } else {
+            try {
+                this.startLevel(request, request.result);
+            } catch (Exception error) {
+                reply.setLength(0);
+                reply.append("ERR ").append(error.getMessage());
+            }
+        }
+        this.send(connection, reply);
+        try {
+            this.handleLines(connection);
+        } catch (IOException error) {
+            this.disconnect(connection);
+        }
+    }
+
+    private void startLevel(LevelRequest request, Level level) {
+        Connection connection = request.connection;
+        if (request.next) {
+            connection.session.nextLevel(level);
+        } else {
+            GameSession session = new GameSession(request.level, request.coloured, level);
+            session.setTimeLimitEnabled(request.timed);
+            connection.session = session;
+        }
+        this.started(connection);
+    }
+
+    private void requireSession(GameSession session) {
+        if (session == null) {
+            throw new IllegalStateException("JOIN a level first");
+        }
+    }
+
+    private void appendStatus(Connection connection, GameSession.Status status) {
+        GameSession session = connection.session;
+        switch (status) {
+            case WON:
+                deadlines.remove(connection);
+                reply.append("WON ").append(session.getMoveCount()).append(' ').append(session.getElapsedMillis());
+                break;
+            case TIME_UP:
+                reply.append("TIMEUP");
+                connection.timeUpSent = true;
+                break;
+            default:
+                reply.append("OK ").append(session.getMoveCount());
+        }
+    }
+
+    /**
+     * Describe the level just started, and queue its deadline if it is timed
+     */
+    private void started(Connection connection) {
+        GameSession session = connection.session;
+        BoardState state = session.getState();
+        reply.append("LEVEL ").append(session.getLevel()).append(' ').append(state.getWidth())
+                .append(' ').append(state.getHeight()).append(' ').append(session.getTimeLimit());
+        deadlines.remove(connection);
+        connection.timeUpSent = false;
+        long remaining = session.getRemainingMillis();
+        if (remaining >= 0 && session.getStatus() == GameSession.Status.PLAYING) {
+            connection.deadline = System.nanoTime() + remaining * 1_000_000;
+            deadlines.add(connection);
+        }
+    }
+
+    /**
+     * Tell players whose time limit has passed
+     */
+    private void expireDeadlines() {
+        long now = System.nanoTime();
+        while (!deadlines.isEmpty() && deadlines.peek().deadline <= now) {
+            Connection connection = deadlines.poll();
+            GameSession.Status status = connection.session.getStatus();
+            if (status == GameSession.Status.PLAYING) {
+                // The session started slightly after the deadline was worked out, so try again shortly
+                connection.deadline = now + 1_000_000;
+                deadlines.add(connection);
+            } else if (status == GameSession.Status.TIME_UP && !connection.timeUpSent) {
+                connection.timeUpSent = true;
+                reply.setLength(0);
+                reply.append("TIMEUP");
+                this.send(connection, reply);
+                try {
+                    this.flush(connection);
+                } catch (IOException error) {
+                    this.disconnect(connection);
+                }
+            }
+        }
+    }
+
+    private void send(Connection connection, CharSequence line) {
+        int needed = line.length() + 1;
+        if (connection.out.remaining() < needed) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(connection.out.capacity() * 2, connection.out.position() + needed));
+            connection.out.flip();
+            larger.put(connection.out);
+            connection.out = larger;
+        }
+        for (int i = 0; i < line.length(); i++) {
+            connection.out.put((byte) line.charAt(i));
+        }
+        connection.out.put((byte) '\n');
+    }
+
+    /**
+     * Write as much of the queued output as the socket will take, waiting for it to become
+     * writable for the rest
+     */
+    private void flush(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        if (!connection.key.isValid()) {
+            return;
+        }
+        out.flip();
+        connection.channel.write(out);
+        out.compact();
+        // Commands are left unread while a level is being read, so the selector does not keep waking
+        int ops = connection.loading == null ? SelectionKey.OP_READ : 0;
+        connection.key.interestOps(out.position() > 0 ? ops | SelectionKey.OP_WRITE : ops);
+    }
+
+    /**
+     * One player's connection and game
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private ByteBuffer out = ByteBuffer.allocate(64);
+        private SelectionKey key;
+        private GameSession session;
+        private long deadline;
+        private boolean timeUpSent;
+        /**
+         * Level being read for this connection, or null where commands can be handled
+         */
+        private LevelRequest loading;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A JOIN or NEXT waiting for its level to be read
+     */
+    private static final class LevelRequest {
+        private final Connection connection;
+        private final int level;
+        private final boolean coloured;
+        private final boolean timed;
+        /**
+         * Whether to move the connection's session on, rather than start a new session
+         */
+        private final boolean next;
+        private Level result;
+        private Throwable error;
+
+        private LevelRequest(Connection connection, int level, boolean coloured, boolean timed, boolean next) {
+            this.connection = connection;
+            this.level = level;
+            this.coloured = coloured;
+            this.timed = timed;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Start the server
+     *
+     * @param args Optionally the port to listen on
+     * @throws IOException Where the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        try (GameServer gameServer = new GameServer(port)) {
+            System.out.println("Serving games on port " + gameServer.getPort());
+            gameServer.run();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * One play of the game without any user interface, for bots, servers and automated testing. It
+ * follows the same rules as Game and ColoredGame: presses are counted, the level is won once every
+ * light is off, an optional time limit ends the level, and a won level can be followed by the next.
+ * <p>
+ * Sessions hold only a headless BoardState and a few counters, a few hundred bytes for a standard
+ * board, so one JVM can run tens of thousands at once. No threads or timers are used: the time
+ * limit is checked against System.nanoTime whenever the session is used. Levels are shared
+ * through the LevelCache.
+ * <p>
+ * Not thread safe; each session should only be used by one thread at a time.
+ */
+public class GameSession {
+    /**
+     * Whether a session can still be played
+     */
+    public enum Status {
+        PLAYING,
+        WON,
+        TIME_UP
+    }
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final boolean coloured;
+    /**
+     * Number of the current level, or -1 where the board was provided and there is no progression
+     */
+    private int level;
+    private BoardState state;
+    /**
+     * The board as it was when the current level started, for restarting it
+     */
+    private Level initial;
+    /**
+     * Created on the first move, so sessions which never undo cost nothing extra until played
+     */
+    private MoveHistory history = null;
+    private int moveCount = 0;
+    private int timeLimit;
+    private boolean timeLimitEnabled = false;
+    private long startTime;
+    /**
+     * Elapsed time when the level ended, or -1 while it is being played
+     */
+    private long endTime = -1;
+    private Status status = Status.PLAYING;
+
+    /**
+     * Start a session at a level, reading it from the level cache. This may wait on the disk; use
+     * LevelCache.getAsync and the constructor taking a Level where that must be avoided.
+     *
+     * @param level    Number of the level, from 1
+     * @param coloured Whether to play the coloured levels rather than the normal ones
+     * @throws Exception Where the level is missing or invalid
+     */
+    public GameSession(int level, boolean coloured) throws Exception {
+        this(level, coloured, LevelCache.getDefault().get(level, coloured));
+    }
+
+    /**
+     * Start a session at a level which has already been read
+     *
+     * @param level    Number of the level, from 1
+     * @param coloured Whether to play the coloured levels rather than the normal ones
+     * @param board    The level numbered level, such as from LevelCache.getAsync
+     */
+    public GameSession(int level, boolean coloured, Level board) {
+        this.coloured = coloured;
+        this.level = level;
+        this.load(board);
+    }
+
+    /**
+     * Start a session playing a custom board, such as one from the board editor. There are no
+     * further levels.
+     *
+     * @param board     The lights to start with. These are copied.
+     * @param timeLimit Time limit in seconds, or 0 for none
+     */
+    public GameSession(BoardState board, int timeLimit) {
+        this.coloured = board instanceof ColoredBoardState;
+        this.level = -1;
+        this.load(new Level(board, timeLimit));
+    }
+
+    private void load(Level next) {
+        if (state != null && state.getWidth() == next.getWidth() && state.getHeight() == next.getHeight()
+                && state.getTopology().equals(next.getTopology())) {
+            next.copyInto(state);
+        } else {
+            state = next.toBoardState();
+        }
+        initial = next;
+        timeLimit = next.getTimeLimit();
+        this.start();
+    }
+
+    /**
+     * Start the current level again from the time it is called, without changing the board
+     */
+    private void start() {
+        moveCount = 0;
+        if (history != null) {
+            history.clear();
+        }
+        startTime = System.nanoTime();
+        endTime = -1;
+        status = state.isSolved() ? Status.WON : Status.PLAYING;
+        if (status == Status.WON) {
+            endTime = 0;
+        }
+    }
+
+    /**
+     * Press a cell, as if its button had been clicked
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return Status after the press. Presses once the level has ended are ignored.
+     */
+    public Status press(int row, int column) {
+        if (row < 0 || row >= state.getHeight() || column < 0 || column >= state.getWidth()) {
+            throw new IndexOutOfBoundsException("Cell " + row + "," + column + " is not on the board");
+        }
+        if (this.getStatus() != Status.PLAYING) {
+            return status;
+        }
+        if (history == null) {
+            history = new MoveHistory();
+        }
+        history.press(state, row, column);
+        moveCount++;
+        this.checkWon();
+        return status;
+    }
+
+    /**
+     * Undo the last press which has not been undone
+     *
+     * @return boolean indicating if a press was undone. Nothing is undone once the level has ended.
+     */
+    public boolean undo() {
+        if (this.getStatus() != Status.PLAYING || history == null || history.undo(state) < 0) {
+            return false;
+        }
+        moveCount--;
+        this.checkWon();
+        return true;
+    }
+
+    /**
+     * Make the last press undone again
+     *
+     * @return boolean indicating if a press was redone. Nothing is redone once the level has ended.
+     */
+    public boolean redo() {
+        if (this.getStatus() != Status.PLAYING || history == null || history.redo(state) < 0) {
+            return false;
+        }
+        moveCount++;
+        this.checkWon();
+        return true;
+    }
+
+    private void checkWon() {
+        if (state.isSolved()) {
+            status = Status.WON;
+            endTime = System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Retrieve whether the level can still be played, ending it first if the time limit has passed
+     *
+     * @return Status of the current level
+     */
+    public Status getStatus() {
+        if (status == Status.PLAYING && timeLimitEnabled && timeLimit > 0) {
+            long elapsed = System.nanoTime() - startTime;
+            if (elapsed >= timeLimit * 1_000_000_000L) {
+                status = Status.TIME_UP;
+                endTime = timeLimit * 1_000_000_000L;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Start the current level again from its original lights
+     */
+    public void restartLevel() {
+        initial.copyInto(state);
+        this.start();
+    }
+
+    /**
+     * Determines whether there is a level after the current one
+     *
+     * @return boolean indicating if nextLevel can be used
+     */
+    public boolean hasNextLevel() {
+        return level != -1 && level < LevelReader.countLevels(coloured);
+    }
+
+    /**
+     * Move on to the next level, as after winning the current one. This may wait on the disk; use
+     * LevelCache.getAsync and nextLevel(Level) where that must be avoided.
+     *
+     * @throws Exception             Where the next level is missing or invalid
+     * @throws IllegalStateException Where there is no next level
+     */
+    public void nextLevel() throws Exception {
+        if (!this.hasNextLevel()) {
+            throw new IllegalStateException("There is no level after level " + level);
+        }
+        this.nextLevel(LevelCache.getDefault().get(level + 1, coloured));
+    }
+
+    /**
+     * Move on to the next level, which has already been read
+     *
+     * @param next The level after the current one, such as from LevelCache.getAsync
+     * @throws IllegalStateException Where there is no next level
+     */
+    public void nextLevel(Level next) {
+        if (!this.hasNextLevel()) {
+            throw new IllegalStateException("There is no level after level " + level);
+        }
+        level++;
+        this.load(next);
+    }
+
+    /**
+     * Apply the time limit of each level. The limit counts from the start of the current level.
+     *
+     * @param enabled Whether the time limit should be applied
+     */
+    public void setTimeLimitEnabled(boolean enabled) {
+        this.getStatus();
+        timeLimitEnabled = enabled;
+    }
+
+    /**
+     * Retrieve the time limit of the current level
+     *
+     * @return int time limit in seconds, or 0 if the level has none
+     */
+    public int getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Retrieve the time spent on the current level, which stops once the level ends
+     *
+     * @return long time in milliseconds
+     */
+    public long getElapsedMillis() {
+        this.getStatus();
+        return (endTime >= 0 ? endTime : System.nanoTime() - startTime) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Retrieve the time left before the time limit is reached
+     *
+     * @return long time in milliseconds, or -1 where no time limit applies
+     */
+    public long getRemainingMillis() {
+        if (!timeLimitEnabled || timeLimit <= 0) {
+            return -1;
+        }
+        return Math.max(0, timeLimit * 1000L - this.getElapsedMillis());
+    }
+
+    /**
+     * Retrieve the number of presses made on the current level, less any undone
+     *
+     * @return int number of presses
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Retrieve the number of the current level
+     *
+     * @return int level number, or -1 for a custom board
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Determines whether this session plays the coloured variant
+     *
+     * @return boolean indicating if the board is coloured
+     */
+    public boolean isColoured() {
+        return coloured;
+    }
+
+    /**
+     * Retrieve the board being played. It must not be changed other than through this session.
+     *
+     * @return BoardState holding the current lights
+     */
+    public BoardState getState() {
+        return state;
+    }
+}
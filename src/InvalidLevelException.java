@@ -0,0 +1,11 @@
+/**
+ * Thrown when a level is invalid due to a bad number of rows or columns, or invalid characters
+ */
+class InvalidLevelException extends Exception {
+    private final String fileName;
+
+    public InvalidLevelException(String message, String fileName) {
+        super(message);
+        this.fileName = fileName;
+    }
+}
@@ -0,0 +1,429 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves normal variant boards of any size, for boards too wide for LightsOutSolver such as
+ * 512x512 and beyond.
+ * <p>
+ * As in LightsOutSolver, chasing the lights leaves the bottom row as a linear function of the top
+ * row presses. Here the chase is done symbolically: every press is tracked as a bit vector over the
+ * width top row presses plus a constant, so one pass over the board gives the width x width system
+ * for the bottom row. Each word of those vectors is chased independently, so the words are shared
+ * between fork/join tasks. The system is then reduced by Gauss-Jordan elimination on packed rows,
+ * M4RI style: pivots are found a block of columns at a time, and every other row is cleared of the
+ * whole block with a single XOR from a table of every combination of the block's pivot rows. The
+ * rows are also cleared in parallel.
+ * <p>
+ * Only two rows of symbolic presses are held, so the memory used is about width * width / 4 bytes
+ * beyond the board itself. Solutions are correct but, unlike LightsOutSolver, not minimal: every
+ * free top row press is left unpressed.
+ * <p>
+ * Only the standard topology is supported, as the chase relies on each press reaching just the
+ * row below. Solvers hold no state between boards and may be shared between threads.
+ */
+public class LargeBoardSolver {
+    /**
+     * Columns of the system reduced together in each elimination step. The table of combinations
+     * holds 2^BLOCK rows.
+     */
+    private static final int BLOCK = 8;
+    /**
+     * Fewest rows cleared by each elimination task
+     */
+    private static final int ROWS_PER_TASK = 256;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a solver which runs on the common fork/join pool
+     */
+    public LargeBoardSolver() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a solver which runs on the given pool
+     *
+     * @param pool Pool to run the chase and elimination on
+     */
+    public LargeBoardSolver(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Determines whether the given board can be solved
+     *
+     * @param board The board to check
+     * @return boolean indicating if some set of presses turns every light out
+     */
+    public boolean isSolvable(NormalBoardState board) {
+        return this.solveTopRow(board) != null;
+    }
+
+    /**
+     * Find a set of presses which solves the given board
+     *
+     * @param board The board to solve. It is not changed.
+     * @return NormalBoardState where each lit light is a press, or null if the board is unsolvable
+     */
+    public NormalBoardState solve(NormalBoardState board) {
+        long[] topRow = this.solveTopRow(board);
+        if (topRow == null) {
+            return null;
+        }
+        NormalBoardState solution = new NormalBoardState(board.getWidth(), board.getHeight());
+        long[] lights = board.copy().getWords();
+        long[] presses = solution.getWords();
+        int wordsPerRow = board.getWordsPerRow();
+        long lastWordMask = board.getToggleMasks().getLastWordMask();
+        System.arraycopy(topRow, 0, presses, 0, wordsPerRow);
+        for (int row = 0; row < board.getHeight(); row++) {
+            if (row > 0) {
+                // Press below every light left lit
+                System.arraycopy(lights, (row - 1) * wordsPerRow, presses, row * wordsPerRow, wordsPerRow);
+            }
+            pressRow(lights, presses, row, wordsPerRow, board.getHeight(), lastWordMask);
+        }
+        for (long word : lights) {
+            if (word != 0) {
+                throw new IllegalStateException("Solution does not clear the board");
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * Press every light of a row at once, as the chase does
+     */
+    private static void pressRow(long[] lights, long[] presses, int row, int wordsPerRow, int height, long lastWordMask) {
+        int base = row * wordsPerRow;
+        for (int word = 0; word < wordsPerRow; word++) {
+            long press = presses[base + word];
+            long left = (press << 1) | (word > 0 ? presses[base + word - 1] >>> 63 : 0);
+            long right = (press >>> 1) | (word + 1 < wordsPerRow ? presses[base + word + 1] << 63 : 0);
+            long mask = word + 1 < wordsPerRow ? -1L : lastWordMask;
+            lights[base + word] ^= (press ^ left ^ right) & mask;
+            if (row > 0) {
+                lights[base - wordsPerRow + word] ^= press;
+            }
+            if (row + 1 < height) {
+                lights[base + wordsPerRow + word] ^= press;
+            }
+        }
+    }
+
+    /**
+     * Find top row presses from which chasing the lights solves the board
+     *
+     * @return long[] holding the top row presses, or null if the board is unsolvable
+     */
+    private long[] solveTopRow(NormalBoardState board) {
+        if (!board.getTopology().isStandard()) {
+            throw new IllegalArgumentException("Boards using the " + board.getTopology() + " topology are not supported");
+        }
+        int width = board.getWidth();
+        // One bit per top row press, then the constant
+        int words = (width + 64) >>> 6;
+        long[] previous = new long[width * words];
+        long[] current = new long[width * words];
+        pool.invoke(new ChaseTask(board, board.readWords(), previous, current, 0, words));
+        // The chase swaps the rows once per board row, leaving the bottom row residuals in one of them
+        long[] residuals = board.getHeight() % 2 == 1 ? previous : current;
+        long[] system = residuals == previous ? current : previous;
+        for (int word = 0; word < words; word++) {
+            for (int column = 0; column < width; column++) {
+                system[column * words + word] = residuals[word * width + column];
+            }
+        }
+        return new Elimination(system, width, words).solve();
+    }
+
+    /**
+     * Chases a range of words of the symbolic presses down the whole board. Press vectors are held
+     * word by word, so word w of the vector of column c is at index w * width + c.
+     */
+    private static final class ChaseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final NormalBoardState board;
+        private final long[] lights;
+        private final long[] previous;
+        private final long[] current;
+        private final int first;
+        private final int end;
+
+        private ChaseTask(NormalBoardState board, long[] lights, long[] previous, long[] current, int first, int end) {
+            this.board = board;
+            this.lights = lights;
+            this.previous = previous;
+            this.current = current;
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first > 1) {
+                int middle = (first + end) >>> 1;
+                invokeAll(new ChaseTask(board, lights, previous, current, first, middle),
+                        new ChaseTask(board, lights, previous, current, middle, end));
+                return;
+            }
+            int width = board.getWidth();
+            int height = board.getHeight();
+            int wordsPerRow = board.getWordsPerRow();
+            int base = first * width;
+            boolean constantWord = first == width >>> 6;
+            long constant = 1L << width;
+
+            // Before the chase the top row presses are the variables themselves
+            for (int column = 0; column < width; column++) {
+                current[base + column] = column >>> 6 == first ? 1L << column : 0;
+            }
+            long[] above = previous;
+            long[] row = current;
+            for (int y = 0; y < height; y++) {
+                // Presses on the next row are the lights left on this row. Outside the constant
+                // word, a variable only reaches columns within y of its own column by row y.
+                int low = constantWord ? 0 : Math.max(0, first * 64 - y - 1);
+                int high = constantWord ? width : Math.min(width, first * 64 + 64 + y + 1);
+                for (int column = low; column < high; column++) {
+                    long toggles = row[base + column];
+                    if (column > 0) {
+                        toggles ^= row[base + column - 1];
+                    }
+                    if (column + 1 < width) {
+                        toggles ^= row[base + column + 1];
+                    }
+                    above[base + column] ^= toggles;
+                }
+                if (constantWord) {
+                    for (int word = 0; word < wordsPerRow; word++) {
+                        for (long lit = lights[y * wordsPerRow + word]; lit != 0; lit &= lit - 1) {
+                            above[base + word * 64 + Long.numberOfTrailingZeros(lit)] ^= constant;
+                        }
+                    }
+                }
+                long[] swap = above;
+                above = row;
+                row = swap;
+            }
+        }
+    }
+
+    /**
+     * Gauss-Jordan elimination of a packed system, one row of words per equation with the
+     * constant in the last column
+     */
+    private final class Elimination {
+        private final long[] rows;
+        private final int count;
+        private final int words;
+        private final int constantWord;
+        private final long constantBit;
+        /**
+         * Every combination of the current block's pivot rows, from its first word on
+         */
+        private final long[] table;
+        private final int[] pivotColumns = new int[BLOCK];
+
+        private Elimination(long[] rows, int count, int words) {
+            this.rows = rows;
+            this.count = count;
+            this.words = words;
+            this.constantWord = count >>> 6;
+            this.constantBit = 1L << count;
+            this.table = new long[(1 << BLOCK) * words];
+        }
+
+        /**
+         * Reduce the system and read off a solution, pressing no free variables
+         *
+         * @return long[] holding the variables, or null if the system is inconsistent
+         */
+        private long[] solve() {
+            int rank = 0;
+            int[] pivotOf = new int[count];
+            for (int blockStart = 0; blockStart < count && rank < count; blockStart += BLOCK) {
+                int pivots = this.findPivots(rank, blockStart, Math.min(count, blockStart + BLOCK));
+                if (pivots == 0) {
+                    continue;
+                }
+                int firstWord = blockStart >>> 6;
+                this.buildTable(rank, pivots, firstWord);
+                pool.invoke(new ClearTask(rank, pivots, firstWord, 0, count));
+                for (int i = 0; i < pivots; i++) {
+                    pivotOf[rank + i] = pivotColumns[i];
+                }
+                rank += pivots;
+            }
+
+            // Rows without a pivot read 0 = constant
+            for (int row = rank; row < count; row++) {
+                if ((rows[row * words + constantWord] & constantBit) != 0) {
+                    return null;
+                }
+            }
+            long[] solution = new long[words];
+            for (int row = 0; row < rank; row++) {
+                if ((rows[row * words + constantWord] & constantBit) != 0) {
+                    solution[pivotOf[row] >>> 6] |= 1L << pivotOf[row];
+                }
+            }
+            return solution;
+        }
+
+        /**
+         * Find pivots for a block of columns, moving them to the rows from rank on and reducing
+         * them against each other so each has a single bit among the block's pivot columns. Rows
+         * from rank on are clear in every column before the block.
+         *
+         * @return int number of pivots found
+         */
+        private int findPivots(int rank, int blockStart, int blockEnd) {
+            int firstWord = blockStart >>> 6;
+            int pivots = 0;
+            for (int column = blockStart; column < blockEnd; column++) {
+                int word = column >>> 6;
+                long bit = 1L << column;
+                int found = -1;
+                for (int row = rank + pivots; row < count; row++) {
+                    // Clear the pivots found so far before looking at the column
+                    for (int i = 0; i < pivots; i++) {
+                        int pivotColumn = pivotColumns[i];
+                        if ((rows[row * words + (pivotColumn >>> 6)] & (1L << pivotColumn)) != 0) {
+                            this.xorRow(row, rank + i, firstWord);
+                        }
+                    }
+                    if ((rows[row * words + word] & bit) != 0) {
+                        found = row;
+                        break;
+                    }
+                }
+                if (found < 0) {
+                    continue;
+                }
+                int pivotRow = rank + pivots;
+                this.swapRows(found, pivotRow);
+                for (int i = 0; i < pivots; i++) {
+                    if ((rows[(rank + i) * words + word] & bit) != 0) {
+                        this.xorRow(rank + i, pivotRow, firstWord);
+                    }
+                }
+                pivotColumns[pivots++] = column;
+            }
+            return pivots;
+        }
+
+        /**
+         * Fill the table so that entry i is the XOR of the pivot rows whose bits are set in i
+         */
+        private void buildTable(int rank, int pivots, int firstWord) {
+            int span = words - firstWord;
+            for (int i = 0; i < span; i++) {
+                table[i] = 0;
+            }
+            for (int entry = 1; entry < 1 << pivots; entry++) {
+                int pivot = Integer.numberOfTrailingZeros(entry);
+                int from = (entry & (entry - 1)) * span;
+                int source = (rank + pivot) * words + firstWord;
+                int target = entry * span;
+                for (int i = 0; i < span; i++) {
+                    table[target + i] = table[from + i] ^ rows[source + i];
+                }
+            }
+        }
+
+        /**
+         * Clears a range of rows of the current block's pivot columns using the table
+         */
+        private final class ClearTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int rank;
+            private final int pivots;
+            private final int firstWord;
+            private final int first;
+            private final int end;
+
+            private ClearTask(int rank, int pivots, int firstWord, int first, int end) {
+                this.rank = rank;
+                this.pivots = pivots;
+                this.firstWord = firstWord;
+                this.first = first;
+                this.end = end;
+            }
+
+            @Override
+            protected void compute() {
+                if (end - first > ROWS_PER_TASK) {
+                    int middle = (first + end) >>> 1;
+                    invokeAll(new ClearTask(rank, pivots, firstWord, first, middle),
+                            new ClearTask(rank, pivots, firstWord, middle, end));
+                    return;
+                }
+                int span = words - firstWord;
+                for (int row = first; row < end; row++) {
+                    if (row >= rank && row < rank + pivots) {
+                        continue;
+                    }
+                    int base = row * words;
+                    int entry = 0;
+                    for (int i = 0; i < pivots; i++) {
+                        int column = pivotColumns[i];
+                        entry |= (int) ((rows[base + (column >>> 6)] >>> column) & 1) << i;
+                    }
+                    if (entry != 0) {
+                        int source = entry * span;
+                        for (int i = 0; i < span; i++) {
+                            rows[base + firstWord + i] ^= table[source + i];
+                        }
+                    }
+                }
+            }
+        }
+
+        private void xorRow(int target, int source, int firstWord) {
+            for (int i = firstWord; i < words; i++) {
+                rows[target * words + i] ^= rows[source * words + i];
+            }
+        }
+
+        private void swapRows(int a, int b) {
+            if (a == b) {
+                return;
+            }
+            for (int i = 0; i < words; i++) {
+                long swap = rows[a * words + i];
+                rows[a * words + i] = rows[b * words + i];
+                rows[b * words + i] = swap;
+            }
+        }
+    }
+
+    /**
+     * Solve a random solvable board of the given size and report how long it took
+     *
+     * @param args Optionally the width, then the height, of the board. Defaults to 512x512.
+     */
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : width;
+        NormalBoardState board = new NormalBoardState(width, height);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                if (random.nextBoolean()) {
+                    board.press(row, column);
+                }
+            }
+        }
+        LargeBoardSolver solver = new LargeBoardSolver();
+        long start = System.nanoTime();
+        NormalBoardState solution = solver.solve(board);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(width + "x" + height + ": " + (solution == null ? "unsolvable" : solution.getLitCount() + " presses")
+                + " in " + millis + "ms");
+    }
+}
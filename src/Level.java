@@ -0,0 +1,185 @@
+import java.util.Arrays;
+
+/**
+ * Represents a level that has been read from file: its size, variant, lights and time limit. Only
+ * primitive state is held - the lights are packed into longs, one bit per cell for normal levels
+ * and two bits per cell for coloured levels, in row order - so many levels can be held in memory
+ * cheaply. Widgets are only created when a Board displays the level.
+ * <p>
+ * Levels never change once read, so one level can be cached and displayed any number of times.
+ * Each level keeps the topology it was authored for and is always played with it. Level files and
+ * packs only hold standard levels.
+ */
+class Level {
+    private final int width;
+    private final int height;
+    private final boolean coloured;
+    private final long[] cells;
+    private final int timeLimit;
+    private final Topology topology;
+
+    /**
+     * Create a new standard level from lights which are already packed
+     *
+     * @param width     Number of cells per row
+     * @param height    Number of rows
+     * @param coloured  Whether this is a coloured level
+     * @param cells     The packed lights, as described on this class. Must not be modified afterwards.
+     * @param timeLimit int representing the time limit in seconds
+     */
+    Level(int width, int height, boolean coloured, long[] cells, int timeLimit) {
+        this.width = width;
+        this.height = height;
+        this.coloured = coloured;
+        this.cells = cells;
+        this.timeLimit = timeLimit;
+        this.topology = Topology.STANDARD;
+    }
+
+    /**
+     * Create a new level holding the lights of a board
+     *
+     * @param state     The lights of the level. Coloured boards make coloured levels, and the level
+     *                  keeps the board's topology.
+     * @param timeLimit int representing the time limit in seconds
+     */
+    public Level(BoardState state, int timeLimit) {
+        this.width = state.getWidth();
+        this.height = state.getHeight();
+        this.coloured = state instanceof ColoredBoardState;
+        this.cells = new long[wordsFor(width, height, coloured)];
+        this.timeLimit = timeLimit;
+        this.topology = state.getTopology();
+        int bitsPerCell = coloured ? 2 : 1;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int bit = (row * width + column) * bitsPerCell;
+                cells[bit >>> 6] |= (long) state.getCell(row, column) << bit;
+            }
+        }
+    }
+
+    /**
+     * Get the number of longs needed to pack the lights of a level
+     *
+     * @param width    Number of cells per row
+     * @param height   Number of rows
+     * @param coloured Whether each cell takes two bits rather than one
+     * @return int number of longs
+     */
+    static int wordsFor(int width, int height, boolean coloured) {
+        return (width * height * (coloured ? 2 : 1) + 63) >>> 6;
+    }
+
+    /**
+     * Retrieve the number of cells per row
+     *
+     * @return int width of the level
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieve the number of rows
+     *
+     * @return int height of the level
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Determines whether this is a coloured level
+     *
+     * @return boolean indicating if the level is coloured
+     */
+    public boolean isColoured() {
+        return coloured;
+    }
+
+    /**
+     * Retrieve the topology this level was authored for
+     *
+     * @return Topology deciding which cells a press alters
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Retrieve the state of one cell
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return int 0 or 1 for normal levels, 0 to 3 for coloured levels
+     */
+    public int getCell(int row, int column) {
+        int bitsPerCell = coloured ? 2 : 1;
+        int bit = (row * width + column) * bitsPerCell;
+        return (int) (cells[bit >>> 6] >>> bit) & (coloured ? 3 : 1);
+    }
+
+    /**
+     * Create a headless state holding the lights of this level, played with its topology
+     *
+     * @return ColoredBoardState for coloured levels, otherwise NormalBoardState. This is a new
+     * board, so may be freely modified.
+     */
+    public BoardState toBoardState() {
+        BoardState state = coloured
+                ? new ColoredBoardState(width, height, topology)
+                : new NormalBoardState(width, height, topology);
+        this.copyInto(state);
+        return state;
+    }
+
+    /**
+     * Copy the lights of this level into an existing board of the same size, variant and topology,
+     * such as when restarting a level
+     *
+     * @param state The board to fill
+     */
+    public void copyInto(BoardState state) {
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                state.setCell(row, column, this.getCell(row, column));
+            }
+        }
+    }
+
+    /**
+     * Retrieve the time limit applied to this level
+     *
+     * @return int representing time limit, in seconds
+     */
+    public int getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Determines whether another level has the same size, variant, topology, lights and time limit
+     *
+     * @param other The object to compare with
+     * @return boolean indicating if the levels are the same
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Level)) {
+            return false;
+        }
+        Level level = (Level) other;
+        return width == level.width && height == level.height && coloured == level.coloured
+                && timeLimit == level.timeLimit && topology.equals(level.topology)
+                && Arrays.equals(cells, level.cells);
+    }
+
+    @Override
+    public int hashCode() {
+        return (((width * 31 + height) * 31 + timeLimit) * 31 + Arrays.hashCode(cells)) * 31
+                + topology.hashCode() + (coloured ? 1 : 0);
+    }
+}
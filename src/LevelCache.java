@@ -0,0 +1,161 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds recently read levels so that replaying or moving on to a level does not read it from disk
+ * again. Levels are kept per variant and number, and the least recently used is dropped once the
+ * cache is full.
+ * <p>
+ * Levels can be prefetched on a background thread, so the next level is usually ready before the
+ * player finishes the current one and the Event Dispatch Thread never waits on the disk.
+ */
+public class LevelCache {
+    /**
+     * Number of levels held by the shared cache
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static LevelCache defaultCache;
+
+    /**
+     * Each level being read or already read. A level being read by a prefetch is waited for
+     * rather than read again.
+     */
+    private final Map<Long, CompletableFuture<Level>> entries;
+    private final ExecutorService prefetcher;
+
+    /**
+     * Create an empty cache
+     *
+     * @param capacity Most levels to hold at once
+     */
+    public LevelCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<Level>> eldest) {
+                return size() > capacity;
+            }
+        };
+        prefetcher = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "Level prefetch");
+            // Never keep the game open just to finish a prefetch
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Retrieve the cache shared by every game
+     *
+     * @return LevelCache holding DEFAULT_CAPACITY levels
+     */
+    public static synchronized LevelCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new LevelCache(DEFAULT_CAPACITY);
+        }
+        return defaultCache;
+    }
+
+    private static long key(int level, boolean coloured) {
+        return (long) level << 1 | (coloured ? 1 : 0);
+    }
+
+    /**
+     * Retrieve a level, reading it on this thread if it is not cached or being prefetched. This
+     * waits on the disk, so must never be called from the Event Dispatch Thread; use getAsync there.
+     *
+     * @param level    Number of the level, from 1
+     * @param coloured Whether to retrieve a coloured level rather than a normal one
+     * @return Level, shared with every other caller
+     * @throws Exception Where the level is missing or invalid
+     */
+    public Level get(int level, boolean coloured) throws Exception {
+        CompletableFuture<Level> entry;
+        boolean load = false;
+        synchronized (entries) {
+            entry = entries.get(key(level, coloured));
+            if (entry == null) {
+                entry = new CompletableFuture<>();
+                entries.put(key(level, coloured), entry);
+                load = true;
+            }
+        }
+        if (load) {
+            this.load(entry, level, coloured);
+        }
+        try {
+            return entry.join();
+        } catch (CompletionException error) {
+            if (error.getCause() instanceof Exception) {
+                throw (Exception) error.getCause();
+            }
+            throw error;
+        }
+    }
+
+    /**
+     * Retrieve a level without waiting for it, reading it on the background thread if it is not
+     * cached or being prefetched. Swing code must use this rather than get, and handle the level
+     * once the future completes.
+     *
+     * @param level    Number of the level, from 1
+     * @param coloured Whether to retrieve a coloured level rather than a normal one
+     * @return CompletableFuture completed with the level, shared with every other caller, or
+     * completed exceptionally where the level is missing or invalid
+     */
+    public CompletableFuture<Level> getAsync(int level, boolean coloured) {
+        CompletableFuture<Level> entry;
+        synchronized (entries) {
+            entry = entries.get(key(level, coloured));
+            if (entry != null) {
+                return entry;
+            }
+            entry = new CompletableFuture<>();
+            entries.put(key(level, coloured), entry);
+        }
+        CompletableFuture<Level> loading = entry;
+        prefetcher.execute(() -> this.load(loading, level, coloured));
+        return entry;
+    }
+
+    /**
+     * Start reading a level in the background if it is not already cached. Levels which cannot be
+     * read are not cached, and the error is only reported if the level is retrieved with get or
+     * getAsync.
+     *
+     * @param level    Number of the level, from 1
+     * @param coloured Whether to prefetch a coloured level rather than a normal one
+     */
+    public void prefetch(int level, boolean coloured) {
+        this.getAsync(level, coloured);
+    }
+
+    /**
+     * Drop every cached level, and the number of levels, such as after the level files change
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        LevelReader.clearLevelCounts();
+    }
+
+    private void load(CompletableFuture<Level> entry, int level, boolean coloured) {
+        try {
+            entry.complete(LevelReader.readLevel(level, coloured));
+        } catch (Exception error) {
+            // Allow the level to be read again, in case the problem is fixed
+            synchronized (entries) {
+                entries.remove(key(level, coloured), entry);
+            }
+            entry.completeExceptionally(error);
+        }
+    }
+}
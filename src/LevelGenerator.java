@@ -0,0 +1,443 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates solvable levels whose fewest presses to solve exactly match a target, for both the
+ * normal and coloured variants. Levels are built by applying random presses to a solved board and
+ * kept only if the solver cannot find a shorter solution, and optionally if the proportion of lit
+ * cells is close to a target density. 5x5 levels which are rotations or reflections of a level
+ * already made, or of one excluded up front, are rejected.
+ * <p>
+ * Bulk generation is split across every core with fork/join, and each level is written to the
+ * level folder as soon as it is made, so no more than one level per task is held in memory. While
+ * levels are made in parallel, each task only rejects levels made earlier or by itself; duplicates
+ * between tasks are then settled in level order, keeping the earlier level and making the later
+ * one again, so the levels made depend only on the seed and not on how the tasks were scheduled.
+ * <p>
+ * Run with: java -cp ./src LevelGenerator --moves 6 --count 1000 [--coloured] [--time 30]
+ * [--density 0.4] [--size 5x5] [--seed 1] [--start 16] [--out src/levels/]
+ */
+public class LevelGenerator {
+    /**
+     * How close the proportion of lit cells must be to the target density
+     */
+    public static final double DENSITY_TOLERANCE = 0.1;
+    /**
+     * Random boards tried for each level before giving up on the target
+     */
+    private static final int MAX_ATTEMPTS = 1_000_000;
+    /**
+     * Levels generated by each fork/join task before it stops splitting
+     */
+    private static final int BATCH = 64;
+
+    private final boolean coloured;
+    private final int width;
+    private final int height;
+    private final int targetMoves;
+    private final int timeLimit;
+    private final double density;
+    /**
+     * Canonical keys of the 5x5 levels made so far, shared between every fork/join task. Guarded
+     * by its own lock.
+     */
+    private final LongHashSet seen = new LongHashSet();
+
+    /**
+     * Create a generator for one kind of level
+     *
+     * @param coloured    Whether to generate coloured levels rather than normal ones
+     * @param width       Number of cells wide each level is
+     * @param height      Number of cells high each level is
+     * @param targetMoves The fewest presses each level must need
+     * @param timeLimit   Time limit written to each level, in seconds
+     * @param density     Target proportion of lit cells, from 0 to 1, or negative for any
+     */
+    public LevelGenerator(boolean coloured, int width, int height, int targetMoves, int timeLimit, double density) {
+        int maxPresses = coloured ? 2 * width * height : width * height;
+        if (targetMoves < 1 || targetMoves > maxPresses) {
+            throw new IllegalArgumentException("Target moves must be between 1 and " + maxPresses);
+        }
+        if (coloured) {
+            // Check the size is supported before any work is done
+            new ColoredSolver(width, height);
+        } else {
+            new LightsOutSolver(width, height);
+        }
+        this.coloured = coloured;
+        this.width = width;
+        this.height = height;
+        this.targetMoves = targetMoves;
+        this.timeLimit = timeLimit;
+        this.density = density;
+    }
+
+    /**
+     * Stop the generator making a level, or any rotation or reflection of it. Boards which are not
+     * 5x5 are never deduplicated.
+     *
+     * @param level The level to exclude
+     */
+    public void exclude(BoardState level) {
+        this.claim(level);
+    }
+
+    /**
+     * Exclude every level in a set of canonical keys
+     *
+     * @param levels Keys from PackedBoard.canonicalKey, such as from LevelReader.readCanonicalLevels
+     */
+    public void exclude(LongHashSet levels) {
+        synchronized (seen) {
+            seen.addAll(levels);
+        }
+    }
+
+    /**
+     * Record a level as made
+     *
+     * @return boolean indicating if no equivalent level had been made already
+     */
+    private boolean claim(BoardState level) {
+        long key = PackedBoard.canonicalKey(level);
+        if (key == -1) {
+            return true;
+        }
+        synchronized (seen) {
+            return seen.add(key);
+        }
+    }
+
+    /**
+     * Check a level made by a task is not equivalent to one already made, without claiming it for
+     * other tasks
+     *
+     * @param made Keys of the levels made by the task, which the level is added to if new
+     * @return boolean indicating if no equivalent level had been made already
+     */
+    private boolean isNew(BoardState level, LongHashSet made) {
+        long key = PackedBoard.canonicalKey(level);
+        if (key == -1) {
+            return true;
+        }
+        synchronized (seen) {
+            if (seen.contains(key)) {
+                return false;
+            }
+        }
+        return made.add(key);
+    }
+
+    /**
+     * Generate a single level
+     *
+     * @param random Source of randomness
+     * @return BoardState whose fewest presses to solve is the target
+     * @throws IllegalStateException Where no matching level was found in MAX_ATTEMPTS tries
+     */
+    public BoardState generate(SplittableRandom random) {
+        return new Worker().generate(random, null);
+    }
+
+    /**
+     * Generate levels in parallel, writing each to the level folder format as it is made
+     *
+     * @param directory  Folder to write the levels to
+     * @param firstLevel Number of the first level to write
+     * @param count      Number of levels to generate
+     * @param seed       Seed for the random boards, so that runs can be repeated
+     * @throws IOException Where a level cannot be written
+     */
+    public void generate(Path directory, int firstLevel, int count, long seed) throws IOException {
+        Files.createDirectories(directory);
+        SplittableRandom rounds = new SplittableRandom(seed);
+        int[] levels = new int[count];
+        for (int i = 0; i < count; i++) {
+            levels[i] = firstLevel + i;
+        }
+        while (levels.length > 0) {
+            long[] keys = new long[levels.length];
+            try {
+                ForkJoinPool.commonPool().invoke(new GenerateTask(directory, levels, keys, 0, levels.length,
+                        rounds.split()));
+            } catch (UncheckedIOException error) {
+                throw error.getCause();
+            }
+            // Keep the first of any levels made by different tasks which match, and make the rest again
+            int repeated = 0;
+            synchronized (seen) {
+                for (int i = 0; i < levels.length; i++) {
+                    if (keys[i] != -1 && !seen.add(keys[i])) {
+                        levels[repeated++] = levels[i];
+                    }
+                }
+            }
+            levels = Arrays.copyOf(levels, repeated);
+        }
+    }
+
+    /**
+     * Retrieve the file a generated level is written to, matching the names LevelReader reads
+     *
+     * @param directory Folder holding the levels
+     * @param level     Number of the level
+     * @return Path of the level file
+     */
+    public Path levelFile(Path directory, int level) {
+        return LevelReader.levelFile(directory, level, coloured);
+    }
+
+    /**
+     * Splits a run of levels in half until it is small enough to generate directly. Records the
+     * canonical key of each level made, so duplicates between tasks can be settled afterwards.
+     */
+    private class GenerateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final int[] levels;
+        private final long[] keys;
+        private final int start;
+        private final int count;
+        private final SplittableRandom random;
+
+        private GenerateTask(Path directory, int[] levels, long[] keys, int start, int count, SplittableRandom random) {
+            this.directory = directory;
+            this.levels = levels;
+            this.keys = keys;
+            this.start = start;
+            this.count = count;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (count <= BATCH) {
+                Worker worker = new Worker();
+                LongHashSet made = new LongHashSet(count);
+                for (int i = start; i < start + count; i++) {
+                    BoardState level = worker.generate(random, made);
+                    keys[i] = PackedBoard.canonicalKey(level);
+                    try {
+                        LevelWriter.writeLevelFile(levelFile(directory, levels[i]), level, timeLimit);
+                    } catch (IOException error) {
+                        throw new UncheckedIOException(error);
+                    }
+                }
+                return;
+            }
+            int half = count / 2;
+            invokeAll(new GenerateTask(directory, levels, keys, start, half, random.split()),
+                    new GenerateTask(directory, levels, keys, start + half, count - half, random.split()));
+        }
+    }
+
+    /**
+     * Holds the solver used by one thread
+     */
+    private class Worker {
+        private final LightsOutSolver solver;
+        private final ColoredSolver colouredSolver;
+
+        private Worker() {
+            boolean packed = width == PackedBoard.SIZE && height == PackedBoard.SIZE;
+            this.solver = coloured || packed ? null : new LightsOutSolver(width, height);
+            this.colouredSolver = coloured ? new ColoredSolver(width, height) : null;
+        }
+
+        /**
+         * Make one level
+         *
+         * @param random Source of randomness
+         * @param made   Keys of the levels made by this task, which are rejected along with those
+         *               already made. Levels are claimed immediately instead where this is null.
+         */
+        private BoardState generate(SplittableRandom random, LongHashSet made) {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                BoardState candidate;
+                if (coloured) {
+                    candidate = this.tryColoured(random);
+                } else if (solver == null) {
+                    candidate = this.tryPacked(random);
+                } else {
+                    candidate = this.tryNormal(random);
+                }
+                if (candidate != null && (made == null ? claim(candidate) : isNew(candidate, made))) {
+                    return candidate;
+                }
+            }
+            throw new IllegalStateException("No level needing " + targetMoves + " moves found in "
+                    + MAX_ATTEMPTS + " attempts");
+        }
+
+        /**
+         * Try a random 5x5 normal board, entirely on packed ints
+         */
+        private BoardState tryPacked(SplittableRandom random) {
+            int presses = 0;
+            while (Integer.bitCount(presses) < targetMoves) {
+                presses |= 1 << random.nextInt(PackedBoard.CELLS);
+            }
+            int board = 0;
+            for (int remaining = presses; remaining != 0; remaining &= remaining - 1) {
+                board = PackedBoard.press(board, Integer.numberOfTrailingZeros(remaining));
+            }
+            if (!matchesDensity(Integer.bitCount(board))
+                    || LightsOutSolver.minimumMovesPacked(board) != targetMoves) {
+                return null;
+            }
+            return NormalBoardState.fromPacked(board);
+        }
+
+        private BoardState tryNormal(SplittableRandom random) {
+            NormalBoardState board = new NormalBoardState(width, height);
+            NormalBoardState pressed = new NormalBoardState(width, height);
+            int presses = 0;
+            while (presses < targetMoves) {
+                int row = random.nextInt(height);
+                int column = random.nextInt(width);
+                if (!pressed.isOn(row, column)) {
+                    pressed.toggle(row, column);
+                    board.press(row, column);
+                    presses++;
+                }
+            }
+            if (!matchesDensity(countLit(board)) || solver.minimumMoves(board) != targetMoves) {
+                return null;
+            }
+            return board;
+        }
+
+        /**
+         * Try a random coloured board. Starting from every cell off, pressing a cell twice undoes
+         * pressing it once, so the board is built by pressing each chosen cell the opposite way.
+         */
+        private BoardState tryColoured(SplittableRandom random) {
+            int[] counts = new int[width * height];
+            int presses = 0;
+            while (presses < targetMoves) {
+                int cell = random.nextInt(counts.length);
+                if (counts[cell] < 2) {
+                    counts[cell]++;
+                    presses++;
+                }
+            }
+            ColoredBoardState board = new ColoredBoardState(width, height);
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    board.setCell(row, column, 1);
+                }
+            }
+            for (int cell = 0; cell < counts.length; cell++) {
+                for (int press = 0; press < (3 - counts[cell]) % 3; press++) {
+                    board.press(cell / width, cell % width);
+                }
+            }
+            if (!matchesDensity(countLit(board)) || colouredSolver.minimumMoves(board) != targetMoves) {
+                return null;
+            }
+            return board;
+        }
+
+        private int countLit(BoardState board) {
+            int lit = 0;
+            for (int row = 0; row < height; row++) {
+                for (int column = 0; column < width; column++) {
+                    if (board.isOn(row, column)) {
+                        lit++;
+                    }
+                }
+            }
+            return lit;
+        }
+
+        private boolean matchesDensity(int lit) {
+            return density < 0 || Math.abs((double) lit / (width * height) - density) <= DENSITY_TOLERANCE;
+        }
+    }
+
+    /**
+     * Generate levels from the command line
+     *
+     * @param args Options, as described on this class
+     * @throws IOException Where a level cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        boolean coloured = false;
+        int count = 1;
+        int moves = -1;
+        int timeLimit = 30;
+        double density = -1;
+        int width = Board.BOARD_SIZE;
+        int height = Board.BOARD_SIZE;
+        long seed = System.nanoTime();
+        int start = -1;
+        Path directory = Paths.get(LevelReader.LEVEL_DIRECTORY);
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--coloured":
+                    coloured = true;
+                    break;
+                case "--count":
+                    count = Integer.parseInt(args[++i]);
+                    break;
+                case "--moves":
+                    moves = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    timeLimit = Integer.parseInt(args[++i]);
+                    break;
+                case "--density":
+                    density = Double.parseDouble(args[++i]);
+                    break;
+                case "--size":
+                    String[] size = args[++i].split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--start":
+                    start = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    directory = Paths.get(args[++i]);
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+        if (moves == -1) {
+            System.out.println("Usage: LevelGenerator --moves N [--count N] [--coloured] [--time S]"
+                    + " [--density D] [--size WxH] [--seed S] [--start N] [--out DIR]");
+            return;
+        }
+
+        LevelGenerator generator = new LevelGenerator(coloured, width, height, moves, timeLimit, density);
+        if (start == -1) {
+            // Continue after the existing levels
+            start = 1;
+            while (Files.exists(generator.levelFile(directory, start))) {
+                start++;
+            }
+        }
+        if (directory.equals(Paths.get(LevelReader.LEVEL_DIRECTORY))) {
+            // Avoid repeating any level which can already be played
+            generator.exclude(LevelReader.readCanonicalLevels(coloured));
+        }
+        long begin = System.nanoTime();
+        generator.generate(directory, start, count, seed);
+        System.out.println("Generated levels " + start + " to " + (start + count - 1) + " in "
+                + (System.nanoTime() - begin) / 1_000_000 + "ms");
+    }
+}
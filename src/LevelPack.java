@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Many levels stored in one binary file, which is memory-mapped so any level can be read in
+ * constant time by its number without opening or parsing a file per level.
+ * <p>
+ * The file is laid out as:
+ * <ul>
+ *     <li>Header: the 8 byte magic "LOPACK01", then the number of levels as an int</li>
+ *     <li>Index: the file offset of each level's record as a long, in level order</li>
+ *     <li>Records: the mode (0 normal, 1 coloured) as a byte, the width and height as shorts,
+ *     the time limit in seconds as an int, then the cells in row order packed into bytes from the
+ *     lowest bit - one bit per cell for normal levels and two bits per cell for coloured levels</li>
+ * </ul>
+ * All values are big-endian. Every record is checked when the pack is opened, so reading a level
+ * never fails.
+ * <p>
+ * Convert a folder of CSV levels into packs from the command line with:
+ * java -cp ./src LevelPack convert [folder]
+ */
+public class LevelPack {
+    /**
+     * Name of the pack of normal levels within the level folder
+     */
+    public static final String NORMAL_PACK = "levels.pack";
+    /**
+     * Name of the pack of coloured levels within the level folder
+     */
+    public static final String COLOURED_PACK = "colouredlevels.pack";
+    static final byte[] MAGIC = {'L', 'O', 'P', 'A', 'C', 'K', '0', '1'};
+    static final int HEADER_SIZE = MAGIC.length + Integer.BYTES;
+    static final int RECORD_HEADER_SIZE = 1 + 2 * Short.BYTES + Integer.BYTES;
+    static final byte NORMAL = 0;
+    static final byte COLOURED = 1;
+
+    private static final LevelPack[] defaultPacks = new LevelPack[2];
+    private static final boolean[] defaultLoaded = new boolean[2];
+
+    private final ByteBuffer data;
+    private final int count;
+
+    private LevelPack(ByteBuffer data, int count) {
+        this.data = data;
+        this.count = count;
+    }
+
+    /**
+     * Memory-map a level pack
+     *
+     * @param file The pack file
+     * @return LevelPack reading from the file
+     * @throws IOException Where the file cannot be read or is not a valid level pack
+     */
+    public static LevelPack open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a level pack: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (mapped.get(i) != MAGIC[i]) {
+                    throw new IOException("Not a level pack: " + file);
+                }
+            }
+            int count = mapped.getInt(MAGIC.length);
+            if (count < 0 || HEADER_SIZE + (long) count * Long.BYTES > size) {
+                throw new IOException("Corrupt level pack index: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            LevelPack pack = new LevelPack(mapped, count);
+            for (int level = 1; level <= count; level++) {
+                if (!pack.isValidRecord(level)) {
+                    throw new IOException("Corrupt level " + level + " in level pack: " + file);
+                }
+            }
+            return pack;
+        }
+    }
+
+    private boolean isValidRecord(int level) {
+        long offset = data.getLong(HEADER_SIZE + (level - 1) * Long.BYTES);
+        if (offset < HEADER_SIZE || offset + RECORD_HEADER_SIZE > data.limit()) {
+            return false;
+        }
+        int position = (int) offset;
+        byte mode = data.get(position);
+        int width = data.getShort(position + 1);
+        int height = data.getShort(position + 3);
+        if ((mode != NORMAL && mode != COLOURED) || width < LevelParser.MIN_SIZE || height < LevelParser.MIN_SIZE) {
+            return false;
+        }
+        return position + RECORD_HEADER_SIZE + (long) cellBytes(width, height, mode == COLOURED) <= data.limit();
+    }
+
+    /**
+     * Retrieve the pack in the level folder for one variant, if there is one
+     *
+     * @param coloured Whether to retrieve the coloured pack rather than the normal one
+     * @return LevelPack, or null if there is no usable pack
+     */
+    public static synchronized LevelPack getDefault(boolean coloured) {
+        int slot = coloured ? 1 : 0;
+        if (!defaultLoaded[slot]) {
+            defaultLoaded[slot] = true;
+            Path file = defaultPath(coloured);
+            if (Files.exists(file)) {
+                try {
+                    defaultPacks[slot] = open(file);
+                } catch (IOException error) {
+                    // Fall back to the CSV levels
+                    System.out.println("Failed to open level pack due to error");
+                    error.printStackTrace();
+                }
+            }
+        }
+        return defaultPacks[slot];
+    }
+
+    /**
+     * Retrieve where the pack for one variant is kept in the level folder
+     *
+     * @param coloured Whether to retrieve the coloured pack rather than the normal one
+     * @return Path of the pack file
+     */
+    public static Path defaultPath(boolean coloured) {
+        return Paths.get(LevelReader.LEVEL_DIRECTORY + (coloured ? COLOURED_PACK : NORMAL_PACK));
+    }
+
+    /**
+     * Get the number of bytes needed to hold the cells of a level
+     *
+     * @param width    Number of cells per row
+     * @param height   Number of rows
+     * @param coloured Whether each cell takes two bits rather than one
+     * @return int number of bytes
+     */
+    static int cellBytes(int width, int height, boolean coloured) {
+        long bits = (long) width * height * (coloured ? 2 : 1);
+        return (int) ((bits + 7) >>> 3);
+    }
+
+    /**
+     * Retrieve the number of levels in this pack. Levels are numbered from 1.
+     *
+     * @return int number of levels
+     */
+    public int size() {
+        return count;
+    }
+
+    private int record(int level) {
+        if (level < 1 || level > count) {
+            throw new IndexOutOfBoundsException("Level " + level + " is not in this pack of " + count);
+        }
+        return (int) data.getLong(HEADER_SIZE + (level - 1) * Long.BYTES);
+    }
+
+    /**
+     * Determines whether a level is a coloured level
+     *
+     * @param level Number of the level, from 1
+     * @return boolean indicating if the level is coloured
+     */
+    public boolean isColoured(int level) {
+        return data.get(this.record(level)) == COLOURED;
+    }
+
+    /**
+     * Retrieve the width of a level
+     *
+     * @param level Number of the level, from 1
+     * @return int number of cells per row
+     */
+    public int getWidth(int level) {
+        return data.getShort(this.record(level) + 1);
+    }
+
+    /**
+     * Retrieve the height of a level
+     *
+     * @param level Number of the level, from 1
+     * @return int number of rows
+     */
+    public int getHeight(int level) {
+        return data.getShort(this.record(level) + 3);
+    }
+
+    /**
+     * Retrieve the time limit of a level
+     *
+     * @param level Number of the level, from 1
+     * @return int time limit in seconds, or 0 if the level has none
+     */
+    public int getTimeLimit(int level) {
+        return data.getInt(this.record(level) + 5);
+    }
+
+    /**
+     * Retrieve the state of one cell of a level
+     *
+     * @param level  Number of the level, from 1
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return int 0 or 1 for normal levels, 0 to 3 for coloured levels
+     */
+    public int getCell(int level, int row, int column) {
+        int record = this.record(level);
+        boolean coloured = data.get(record) == COLOURED;
+        int bitsPerCell = coloured ? 2 : 1;
+        long bit = ((long) row * data.getShort(record + 1) + column) * bitsPerCell;
+        int cells = data.get(record + RECORD_HEADER_SIZE + (int) (bit >>> 3));
+        return (cells >>> (bit & 7)) & (coloured ? 3 : 1);
+    }
+
+    /**
+     * Copy a level into a board of the same size
+     *
+     * @param level Number of the level, from 1
+     * @param state The board to fill
+     */
+    public void copyInto(int level, BoardState state) {
+        int record = this.record(level);
+        boolean coloured = data.get(record) == COLOURED;
+        int width = data.getShort(record + 1);
+        int height = data.getShort(record + 3);
+        int bitsPerCell = coloured ? 2 : 1;
+        int cellMask = coloured ? 3 : 1;
+        int position = record + RECORD_HEADER_SIZE;
+        int bit = 0;
+        int cells = 0;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                if ((bit & 7) == 0) {
+                    cells = data.get(position++);
+                }
+                state.setCell(row, column, (cells >>> (bit & 7)) & cellMask);
+                bit += bitsPerCell;
+            }
+        }
+    }
+
+    /**
+     * Create a headless board holding a level
+     *
+     * @param level Number of the level, from 1
+     * @return ColoredBoardState for coloured levels, otherwise NormalBoardState
+     */
+    public BoardState toBoardState(int level) {
+        BoardState state = this.isColoured(level)
+                ? new ColoredBoardState(this.getWidth(level), this.getHeight(level))
+                : new NormalBoardState(this.getWidth(level), this.getHeight(level));
+        this.copyInto(level, state);
+        return state;
+    }
+
+    /**
+     * Create a level holding a level from this pack. Records use the same bit layout as Level, so
+     * the cells are copied a byte at a time.
+     *
+     * @param level Number of the level, from 1
+     * @return Level holding the packed lights and time limit
+     */
+    public Level toLevel(int level) {
+        int record = this.record(level);
+        boolean coloured = data.get(record) == COLOURED;
+        int width = data.getShort(record + 1);
+        int height = data.getShort(record + 3);
+        long[] packed = new long[Level.wordsFor(width, height, coloured)];
+        int position = record + RECORD_HEADER_SIZE;
+        int bytes = cellBytes(width, height, coloured);
+        for (int i = 0; i < bytes; i++) {
+            packed[i >>> 3] |= (data.get(position + i) & 0xFFL) << ((i & 7) << 3);
+        }
+        return new Level(width, height, coloured, packed, data.getInt(record + 5));
+    }
+
+    /**
+     * Convert the CSV levels in a folder into packs, or show what a pack holds
+     *
+     * @param args "convert" then optionally the level folder, or "info" then a pack file
+     * @throws Exception Where a level cannot be read or a pack cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: LevelPack convert [folder] | info <pack>");
+            return;
+        }
+        switch (args[0]) {
+            case "convert":
+                Path directory = Paths.get(args.length > 1 ? args[1] : LevelReader.LEVEL_DIRECTORY);
+                for (boolean coloured : new boolean[]{false, true}) {
+                    long start = System.nanoTime();
+                    Path file = directory.resolve(coloured ? COLOURED_PACK : NORMAL_PACK);
+                    int written = LevelPackWriter.convert(directory, coloured, file);
+                    System.out.println("Packed " + written + (coloured ? " coloured" : "") + " levels into " + file
+                            + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+                }
+                break;
+            case "info":
+                LevelPack pack = open(Paths.get(args[1]));
+                int coloured = 0;
+                for (int level = 1; level <= pack.size(); level++) {
+                    if (pack.isColoured(level)) {
+                        coloured++;
+                    }
+                }
+                System.out.println(pack.size() + " levels, " + coloured + " coloured");
+                break;
+            default:
+                System.out.println("Unknown command: " + args[0]);
+        }
+    }
+}
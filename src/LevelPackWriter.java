@@ -0,0 +1,128 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds a level pack in the format read by LevelPack. Levels are packed into memory as they are
+ * added, then written out with the index in one go.
+ */
+public class LevelPackWriter {
+    /**
+     * Packs are memory-mapped as a single buffer, so cannot be larger than this
+     */
+    private static final long MAX_PACK_SIZE = Integer.MAX_VALUE - 8;
+
+    private byte[] records = new byte[1024];
+    private int recordsLength = 0;
+    private long[] offsets = new long[64];
+    private int count = 0;
+
+    /**
+     * Add a level to the end of the pack
+     *
+     * @param state     The level. Coloured boards are stored as coloured levels.
+     * @param timeLimit Time limit in seconds
+     */
+    public void add(BoardState state, int timeLimit) {
+        int width = state.getWidth();
+        int height = state.getHeight();
+        if (width > Short.MAX_VALUE || height > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Levels in a pack must be at most " + Short.MAX_VALUE + " cells wide and high");
+        }
+        boolean coloured = state instanceof ColoredBoardState;
+        int size = LevelPack.RECORD_HEADER_SIZE + LevelPack.cellBytes(width, height, coloured);
+        long needed = recordsLength + (long) size;
+        if (LevelPack.HEADER_SIZE + (count + 1L) * Long.BYTES + needed > MAX_PACK_SIZE) {
+            throw new IllegalStateException("Level pack is full");
+        }
+        if (count == offsets.length) {
+            long[] larger = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, larger, 0, count);
+            offsets = larger;
+        }
+        if (needed > records.length) {
+            byte[] larger = new byte[(int) Math.min(MAX_PACK_SIZE, Math.max(records.length * 2L, needed))];
+            System.arraycopy(records, 0, larger, 0, recordsLength);
+            records = larger;
+        }
+        offsets[count++] = recordsLength;
+
+        int position = recordsLength;
+        records[position] = coloured ? LevelPack.COLOURED : LevelPack.NORMAL;
+        records[position + 1] = (byte) (width >>> 8);
+        records[position + 2] = (byte) width;
+        records[position + 3] = (byte) (height >>> 8);
+        records[position + 4] = (byte) height;
+        records[position + 5] = (byte) (timeLimit >>> 24);
+        records[position + 6] = (byte) (timeLimit >>> 16);
+        records[position + 7] = (byte) (timeLimit >>> 8);
+        records[position + 8] = (byte) timeLimit;
+        position += LevelPack.RECORD_HEADER_SIZE;
+
+        int bitsPerCell = coloured ? 2 : 1;
+        int bit = 0;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                records[position + (bit >>> 3)] |= (byte) (state.getCell(row, column) << (bit & 7));
+                bit += bitsPerCell;
+            }
+        }
+        recordsLength += size;
+    }
+
+    /**
+     * Retrieve the number of levels added so far
+     *
+     * @return int number of levels
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Write the pack to a file
+     *
+     * @param file Where to write the pack
+     * @throws IOException Where the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        long recordsStart = LevelPack.HEADER_SIZE + (long) count * Long.BYTES;
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(LevelPack.MAGIC);
+            out.writeInt(count);
+            for (int level = 0; level < count; level++) {
+                out.writeLong(recordsStart + offsets[level]);
+            }
+            out.write(records, 0, recordsLength);
+        }
+    }
+
+    /**
+     * Pack every CSV level of one variant in a folder, from level 1 up to the first missing level
+     *
+     * @param directory Folder holding the CSV levels
+     * @param coloured  Whether to pack the coloured levels rather than the normal ones
+     * @param file      Where to write the pack
+     * @return int number of levels packed
+     * @throws IOException           Where a level cannot be read or the pack cannot be written
+     * @throws InvalidLevelException Where a level is invalid
+     */
+    public static int convert(Path directory, boolean coloured, Path file) throws IOException, InvalidLevelException {
+        LevelPackWriter writer = new LevelPackWriter();
+        LevelParser parser = new LevelParser();
+        for (int level = 1; ; level++) {
+            Path levelFile = LevelReader.levelFile(directory, level, coloured);
+            if (!Files.exists(levelFile)) {
+                break;
+            }
+            parser.parse(levelFile, coloured, levelFile.getFileName().toString());
+            writer.add(parser.toBoardState(coloured), parser.getTimeLimit());
+        }
+        writer.write(file);
+        return writer.size();
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Parses level files byte by byte, straight into a primitive array of cell states. The file
+ * buffer and cell array are reused between levels, so reading many levels with one parser makes
+ * no garbage beyond the file handle - no Strings, regular expressions or widgets are created.
+ * <p>
+ * A level is a series of whitespace separated lines: an optional "width x height" line such as
+ * "7x9" for boards which are not 5x5, one comma separated line of cells per row, then an optional
+ * time limit in seconds. The file may start with a UTF-8 byte order mark.
+ * <p>
+ * Not thread safe; use one parser per thread.
+ */
+public class LevelParser {
+    /**
+     * The smallest board a level may declare.
+     */
+    public static final int MIN_SIZE = 3;
+    /**
+     * The most cells a level may declare, which stops a corrupt dimensions line from allocating
+     * a huge board.
+     */
+    public static final int MAX_CELLS = 1 << 24;
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private byte[] buffer = new byte[256];
+    private int length;
+    private int position;
+    private byte[] cells = new byte[Board.BOARD_SIZE * Board.BOARD_SIZE];
+    private int width;
+    private int height;
+    private int timeLimit;
+
+    /**
+     * Read and parse a level file
+     *
+     * @param file     The level file
+     * @param coloured Whether cells may hold the coloured states 0 to 3, rather than just 0 and 1
+     * @param fileName Name of the level being read, used for error reporting
+     * @throws IOException           Where the file cannot be read
+     * @throws InvalidLevelException Where the file is not a valid level
+     */
+    public void parse(Path file, boolean coloured, String fileName) throws IOException, InvalidLevelException {
+        length = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+            }
+        }
+        this.parse(coloured, fileName);
+    }
+
+    /**
+     * Parse a level which is already in memory
+     *
+     * @param data     Bytes of the level file. They are copied, so may be reused afterwards.
+     * @param offset   Position of the first byte of the level
+     * @param count    Number of bytes in the level
+     * @param coloured Whether cells may hold the coloured states 0 to 3, rather than just 0 and 1
+     * @param fileName Name of the level being read, used for error reporting
+     * @throws InvalidLevelException Where the bytes are not a valid level
+     */
+    public void parse(byte[] data, int offset, int count, boolean coloured, String fileName) throws InvalidLevelException {
+        if (buffer.length < count) {
+            buffer = new byte[count];
+        }
+        System.arraycopy(data, offset, buffer, 0, count);
+        length = count;
+        this.parse(coloured, fileName);
+    }
+
+    private void parse(boolean coloured, String fileName) throws InvalidLevelException {
+        position = 0;
+        if (length >= BYTE_ORDER_MARK.length && buffer[0] == BYTE_ORDER_MARK[0]
+                && buffer[1] == BYTE_ORDER_MARK[1] && buffer[2] == BYTE_ORDER_MARK[2]) {
+            position = BYTE_ORDER_MARK.length;
+        }
+
+        this.readDimensions(fileName);
+        if (cells.length < width * height) {
+            cells = new byte[width * height];
+        }
+
+        int maxState = coloured ? 3 : 1;
+        int row = 0;
+        while (row < height && this.skipWhitespace()) {
+            this.readRow(row, maxState, coloured, fileName);
+            row++;
+        }
+        // Invalid file - fewer rows than the board requires
+        if (row < height) {
+            throw new InvalidLevelException("Level has invalid number of rows", fileName);
+        }
+
+        timeLimit = 0;
+        if (this.skipWhitespace()) {
+            timeLimit = this.readNumber(fileName, "Invalid time limit");
+            if (position < length && !isWhitespace(buffer[position])) {
+                throw new InvalidLevelException("Invalid time limit", fileName);
+            }
+            // More after timeLimit indicates it's invalid.
+            if (this.skipWhitespace()) {
+                throw new InvalidLevelException("Level has invalid number of rows", fileName);
+            }
+        }
+    }
+
+    /**
+     * Read the optional dimensions line, defaulting to 5x5 where there is none
+     */
+    private void readDimensions(String fileName) throws InvalidLevelException {
+        width = Board.BOARD_SIZE;
+        height = Board.BOARD_SIZE;
+        if (!this.skipWhitespace() || buffer[position] == ',' || !this.tokenContains('x')) {
+            return;
+        }
+        int readWidth = this.readNumber(fileName, "Invalid level dimensions");
+        if (position >= length || buffer[position] != 'x') {
+            throw new InvalidLevelException("Invalid level dimensions", fileName);
+        }
+        position++;
+        int readHeight = this.readNumber(fileName, "Invalid level dimensions");
+        if (position < length && !isWhitespace(buffer[position])) {
+            throw new InvalidLevelException("Invalid level dimensions", fileName);
+        }
+        if (readWidth < MIN_SIZE || readHeight < MIN_SIZE) {
+            throw new InvalidLevelException("Level must be at least " + MIN_SIZE + "x" + MIN_SIZE, fileName);
+        }
+        if ((long) readWidth * readHeight > MAX_CELLS) {
+            throw new InvalidLevelException("Level must have at most " + MAX_CELLS + " cells", fileName);
+        }
+        width = readWidth;
+        height = readHeight;
+    }
+
+    /**
+     * Read one comma separated row of cells into the cell array
+     */
+    private void readRow(int row, int maxState, boolean coloured, String fileName) throws InvalidLevelException {
+        int base = row * width;
+        int column = 0;
+        while (true) {
+            // Invalid file - incorrect number of columns
+            if (column == width) {
+                throw new InvalidLevelException("Invalid level: Incorrect number of columns", fileName);
+            }
+            // Each cell must be a single digit no larger than the highest state of the variant.
+            // This will throw for coloured cells in normal levels too
+            int state = position < length ? buffer[position] - '0' : -1;
+            position++;
+            if (state < 0 || state > maxState || (position < length && isDigit(buffer[position]))) {
+                throw new InvalidLevelException(coloured
+                        ? "Coloured level contains invalid characters"
+                        : "Normal level contains invalid characters", fileName);
+            }
+            cells[base + column] = (byte) state;
+            column++;
+            if (position >= length || isWhitespace(buffer[position])) {
+                break;
+            }
+            if (buffer[position] != ',') {
+                throw new InvalidLevelException(coloured
+                        ? "Coloured level contains invalid characters"
+                        : "Normal level contains invalid characters", fileName);
+            }
+            position++;
+        }
+        if (column != width) {
+            throw new InvalidLevelException("Invalid level: Incorrect number of columns", fileName);
+        }
+    }
+
+    /**
+     * Read a non-negative decimal number
+     */
+    private int readNumber(String fileName, String error) throws InvalidLevelException {
+        if (position >= length || !isDigit(buffer[position])) {
+            throw new InvalidLevelException(error, fileName);
+        }
+        long value = 0;
+        while (position < length && isDigit(buffer[position])) {
+            value = value * 10 + (buffer[position] - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new InvalidLevelException(error, fileName);
+            }
+            position++;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Move past any whitespace
+     *
+     * @return boolean indicating if there is anything left to read
+     */
+    private boolean skipWhitespace() {
+        while (position < length && isWhitespace(buffer[position])) {
+            position++;
+        }
+        return position < length;
+    }
+
+    /**
+     * Determines whether the token at the current position contains the given character
+     */
+    private boolean tokenContains(char target) {
+        for (int i = position; i < length && !isWhitespace(buffer[i]); i++) {
+            if (buffer[i] == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace(byte value) {
+        return value == ' ' || value == '\n' || value == '\r' || value == '\t' || value == '\f';
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    /**
+     * Retrieve the width of the last level parsed
+     *
+     * @return int number of cells per row
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieve the height of the last level parsed
+     *
+     * @return int number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieve the time limit of the last level parsed
+     *
+     * @return int time limit in seconds, or 0 if the level has none
+     */
+    public int getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Retrieve the state of a cell of the last level parsed
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return int 0 or 1 for normal levels, 0 to 3 for coloured levels
+     */
+    public int getCell(int row, int column) {
+        return cells[row * width + column];
+    }
+
+    /**
+     * Copy the last level parsed into a board of the same size
+     *
+     * @param state The board to fill
+     */
+    public void copyInto(BoardState state) {
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                state.setCell(row, column, cells[row * width + column]);
+            }
+        }
+    }
+
+    /**
+     * Create a level holding the last level parsed
+     *
+     * @param coloured Whether to create a coloured level rather than a normal one
+     * @return Level holding the packed lights and time limit
+     */
+    public Level toLevel(boolean coloured) {
+        int bitsPerCell = coloured ? 2 : 1;
+        long[] packed = new long[Level.wordsFor(width, height, coloured)];
+        for (int cell = 0; cell < width * height; cell++) {
+            int bit = cell * bitsPerCell;
+            packed[bit >>> 6] |= (long) cells[cell] << bit;
+        }
+        return new Level(width, height, coloured, packed, timeLimit);
+    }
+
+    /**
+     * Create a headless board holding the last level parsed
+     *
+     * @param coloured Whether to create a coloured board rather than a normal one
+     * @return ColoredBoardState or NormalBoardState holding the level
+     */
+    public BoardState toBoardState(boolean coloured) {
+        BoardState state = coloured ? new ColoredBoardState(width, height) : new NormalBoardState(width, height);
+        this.copyInto(state);
+        return state;
+    }
+}
@@ -1,165 +1,159 @@
 // Imports
-import java.io.File;
-import java.util.Scanner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
- * Thrown when a level is invalid due to a bad number of rows or columns, or invalid characters
+ * Reads levels from the levels folder. A level file is a CSV with one line per row of the board,
+ * followed by an optional time limit in seconds. Levels which are not the standard 5x5 size declare
+ * their dimensions on the first line as width x height, for example "7x9". Files are decoded by a
+ * LevelParser, which is reused by each thread.
  */
-class InvalidLevelException extends Exception {
-    private final String fileName;
-
-    public InvalidLevelException(String message, String fileName) {
-        super(message);
-        this.fileName = fileName;
-    }
-}
-
-/**
- * Represents a level that has been read from file, including it's buttons and the time limit
- */
-class Level {
-    private final Button[][] buttons;
-    private final int timeLimit;
+public class LevelReader {
+    /**
+     * Folder levels are read from
+     */
+    public static final String LEVEL_DIRECTORY = "src/levels/";
+    private static final ThreadLocal<LevelParser> PARSER = ThreadLocal.withInitial(LevelParser::new);
+    /**
+     * Number of normal and coloured levels, or -1 until they are first counted
+     */
+    private static final int[] levelCounts = {-1, -1};
 
     /**
-     * Create a new level with the
+     * Retrieve the file a level is read from
      *
-     * @param buttons   2D array of buttons read from the file
-     * @param timeLimit int representing the time limit in seconds
+     * @param fileName Name of the level, such as "level3"
+     * @param coloured Whether the level is a coloured level
+     * @return Path of the level file
      */
-    public Level(Button[][] buttons, int timeLimit) {
-        this.timeLimit = timeLimit;
-        this.buttons = buttons;
+    public static Path levelPath(String fileName, boolean coloured) {
+        return Paths.get(LEVEL_DIRECTORY + (coloured ? "coloured" : "") + fileName + ".csv");
     }
 
     /**
-     * Retrieve the buttons from this level
+     * Retrieve the CSV file holding a numbered level within a folder
      *
-     * @return Buttons 2D array, which can be passed to a board.
+     * @param directory Folder holding the levels
+     * @param level     Number of the level
+     * @param coloured  Whether the level is a coloured level
+     * @return Path of the level file
      */
-    public Button[][] getButtons() {
-        return buttons;
+    public static Path levelFile(Path directory, int level, boolean coloured) {
+        return directory.resolve((coloured ? "colouredlevel" : "level") + level + ".csv");
     }
 
     /**
-     * Retrieve the time limit applied to this level
+     * Count the levels available. Where the level folder has a pack for the variant this is the
+     * size of the pack, otherwise the number of consecutive level files from level 1. The folder is
+     * only examined the first time each variant is counted, or after clearLevelCounts.
      *
-     * @return int representing time limit, in seconds
+     * @param coloured Whether to count coloured levels rather than normal ones
+     * @return int number of the last level which can be played
      */
-    public int getTimeLimit() {
-        return timeLimit;
-    }
-}
-
-public class LevelReader {
-    public static Level readLevelFile(String fileName) throws Exception {
-
-        NormalButton[][] levelButtons = new NormalButton[Board.BOARD_SIZE][Board.BOARD_SIZE];
-
-        // Open file from https://www.javatpoint.com/how-to-read-csv-file-in-java, accessed 20 March 2021.
-        // parsing a CSV file into Scanner class constructor
-        // Start copied code
-        Scanner levelScanner = new Scanner(new File("src/levels/" + fileName + ".csv"));
-        // End copied code
-
-        int i = 0;
-        while (i < Board.BOARD_SIZE && levelScanner.hasNext()) {  //returns a boolean value
-            String[] currentRow = levelScanner.next().split(",");
-            // Invalid file - incorrect number of columns
-            if (currentRow.length != Board.BOARD_SIZE) {
-                throw new InvalidLevelException("Invalid level: Incorrect number of columns", fileName);
+    public static synchronized int countLevels(boolean coloured) {
+        int slot = coloured ? 1 : 0;
+        if (levelCounts[slot] < 0) {
+            LevelPack pack = LevelPack.getDefault(coloured);
+            int count = 0;
+            if (pack != null) {
+                count = pack.size();
+            } else {
+                while (Files.exists(levelPath("level" + (count + 1), coloured))) {
+                    count++;
+                }
             }
+            levelCounts[slot] = count;
+        }
+        return levelCounts[slot];
+    }
 
-            for (int j = 0; j < currentRow.length; j++) {
-                boolean currentButtonState = false;
-
-                //following line removes all non digits from the string as there is a hidden character in the first row and column of every level
-                currentRow[j] = currentRow[j].replaceAll("[^0-9]", "");
+    /**
+     * Forget the number of levels, so they are counted again the next time they are needed, such
+     * as after level files are added or removed
+     */
+    public static synchronized void clearLevelCounts() {
+        levelCounts[0] = -1;
+        levelCounts[1] = -1;
+    }
 
-                // Use each value to set the state of the buttons
-                if (currentRow[j].equals("0")) {
-                    currentButtonState = false;
-                } else if (currentRow[j].equals("1")) {
-                    currentButtonState = true;
-                } else {
-                    // This will throw for coloured levels too
-                    throw new InvalidLevelException("Normal level contains invalid characters", fileName);
+    /**
+     * Read every available level and collect their canonical keys, so that new boards which are
+     * rotations or reflections of an existing level can be spotted. Levels which are not 5x5 or
+     * cannot be read are skipped.
+     *
+     * @param coloured Whether to read coloured levels rather than normal ones
+     * @return LongHashSet of keys from PackedBoard.canonicalKey
+     */
+    public static LongHashSet readCanonicalLevels(boolean coloured) {
+        int count = countLevels(coloured);
+        LongHashSet keys = new LongHashSet(count);
+        BoardState state = coloured
+                ? new ColoredBoardState(PackedBoard.SIZE, PackedBoard.SIZE)
+                : new NormalBoardState(PackedBoard.SIZE, PackedBoard.SIZE);
+        LevelPack pack = LevelPack.getDefault(coloured);
+        if (pack != null) {
+            for (int level = 1; level <= count; level++) {
+                if (pack.getWidth(level) == PackedBoard.SIZE && pack.getHeight(level) == PackedBoard.SIZE
+                        && pack.isColoured(level) == coloured) {
+                    pack.copyInto(level, state);
+                    keys.add(PackedBoard.canonicalKey(state));
                 }
-
-                levelButtons[i][j] = new NormalButton(i, j, currentButtonState);
             }
-            i++;
+            return keys;
         }
 
-        // Get time limit
-        int timeLimit = 0;
-        if (levelScanner.hasNext()) {
-            timeLimit = levelScanner.nextInt();
-            // More after timeLimit indicates it's invalid.
-            if (levelScanner.hasNext()) {
-                throw new InvalidLevelException("Level has invalid number of rows", fileName);
+        LevelParser parser = new LevelParser();
+        for (int level = 1; level <= count; level++) {
+            try {
+                parser.parse(levelPath("level" + level, coloured), coloured, "level" + level);
+            } catch (Exception error) {
+                System.out.println("Failed to read level " + level + " due to error");
+                error.printStackTrace();
+                continue;
+            }
+            if (parser.getWidth() == PackedBoard.SIZE && parser.getHeight() == PackedBoard.SIZE) {
+                parser.copyInto(state);
+                keys.add(PackedBoard.canonicalKey(state));
             }
         }
-
-        levelScanner.close();  //closes the scanner  
-        return new Level(levelButtons, timeLimit);
-
+        return keys;
     }
 
+    /**
+     * Read a numbered level, from the variant's level pack if the level folder has one, otherwise
+     * from its CSV file
+     *
+     * @param level    Number of the level, from 1
+     * @param coloured Whether to read a coloured level rather than a normal one
+     * @return Level read
+     * @throws Exception Where the level is missing or invalid
+     */
+    public static Level readLevel(int level, boolean coloured) throws Exception {
+        LevelPack pack = LevelPack.getDefault(coloured);
+        if (pack == null) {
+            return coloured ? readColouredLevelFile("level" + level) : readLevelFile("level" + level);
+        }
+        if (level < 1 || level > pack.size()) {
+            throw new InvalidLevelException("Level " + level + " is not in the level pack", "level" + level);
+        }
+        if (pack.isColoured(level) != coloured) {
+            throw new InvalidLevelException("Level pack holds the wrong variant of level " + level, "level" + level);
+        }
 
-    public static Level readColouredLevelFile(String fileName) throws Exception {
-
-        ColoredButton[][] levelButtons = new ColoredButton[Board.BOARD_SIZE][Board.BOARD_SIZE];
-
-        // Open file from https://www.javatpoint.com/how-to-read-csv-file-in-java, accessed 20 March 2021.
-        // parsing a CSV file into Scanner class constructor
-        // Start copied code
-        Scanner levelScanner = new Scanner(new File("src/levels/coloured" + fileName + ".csv"));
-        // End copied code
-
-        int i = 0;
-        while (i < Board.BOARD_SIZE && levelScanner.hasNext()) {  //returns a boolean value
-            String[] currentRow = levelScanner.next().split(",");
-            // Invalid file - incorrect number of columns
-            if (currentRow.length != Board.BOARD_SIZE) {
-                throw new InvalidLevelException("Invalid level: Incorrect number of columns", fileName);
-            }
-
-            for (int j = 0; j < currentRow.length; j++) {
-                int currentButtonState = 0;
-
-                // Following line removes all non digits from the string as there is a hidden
-                // character in the first row and column of every level
-                currentRow[j] = currentRow[j].replaceAll("[^0-9]", "");
-                if (currentRow[j].equals("0")) {
-                    currentButtonState = 0;
-                } else if (currentRow[j].equals("1")) {
-                    currentButtonState = 1;
-                } else if (currentRow[j].equals("2")) {
-                    currentButtonState = 2;
-                } else if (currentRow[j].equals("3")) {
-                    currentButtonState = 3;
-                } else {
-                    // This will throw for coloured levels too
-                    throw new InvalidLevelException("Coloured level contains invalid characters", fileName);
-                }
+        return pack.toLevel(level);
+    }
 
-                levelButtons[i][j] = new ColoredButton(i, j, currentButtonState);
-            }
-            i++;
-        }
+    public static Level readLevelFile(String fileName) throws Exception {
+        LevelParser parser = PARSER.get();
+        parser.parse(levelPath(fileName, false), false, fileName);
+        return parser.toLevel(false);
+    }
 
-        // Get time limit
-        int timeLimit = 0;
-        if (levelScanner.hasNext()) {
-            timeLimit = levelScanner.nextInt();
-            // More after timeLimit indicates it's invalid.
-            if (levelScanner.hasNext()) {
-                throw new InvalidLevelException("Level has invalid number of rows", fileName);
-            }
-        }
 
-        levelScanner.close();  //closes the scanner  
-        return new Level(levelButtons, timeLimit);
+    public static Level readColouredLevelFile(String fileName) throws Exception {
+        LevelParser parser = PARSER.get();
+        parser.parse(levelPath(fileName, true), true, fileName);
+        return parser.toLevel(true);
     }
 }
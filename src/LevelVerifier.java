@@ -0,0 +1,161 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Command line tool which checks every available level, both normal and coloured, whether it is
+ * read from a level pack or its CSV file. For each level it prints the par - the fewest presses
+ * that solve it - along with a minimal solution, and checks the solution recorded in
+ * levelSolutions.txt actually solves the level. Levels which are rotations or reflections of an
+ * earlier level fail verification.
+ * <p>
+ * Run with: java -cp ./src LevelVerifier
+ */
+public class LevelVerifier {
+    private static final String SOLUTIONS_PATH = "src/levels/levelSolutions.txt";
+    private static final String COLOURED_HEADER = "Coloured Levels";
+
+    /**
+     * Verify every level, exiting with a non-zero status if any fail
+     *
+     * @param args Program arguments - unused
+     * @throws Exception Where a level or the solutions file cannot be read
+     */
+    public static void main(String[] args) throws Exception {
+        Map<Integer, String> solutions = readSolutions(false);
+        int failures = 0;
+
+        int levelCount = LevelReader.countLevels(false);
+        LongHashSet seen = new LongHashSet(levelCount);
+        for (int level = 1; level <= levelCount; level++) {
+            NormalBoardState board = (NormalBoardState) LevelReader.readLevel(level, false).toBoardState();
+            if (isDuplicate(board, seen)) {
+                System.out.println("Level " + level + ": DUPLICATE of an earlier level");
+                failures++;
+                continue;
+            }
+            LightsOutSolver solver = new LightsOutSolver(board.getWidth(), board.getHeight());
+            NormalBoardState solution = solver.solve(board);
+            if (solution == null) {
+                System.out.println("Level " + level + ": UNSOLVABLE");
+                failures++;
+                continue;
+            }
+            int par = solver.minimumMoves(board);
+            if (!report("Level " + level, board, par, MoveNotation.format(solution), solutions.get(level))) {
+                failures++;
+            }
+        }
+
+        Map<Integer, String> colouredSolutions = readSolutions(true);
+        int colouredCount = LevelReader.countLevels(true);
+        seen = new LongHashSet(colouredCount);
+        for (int level = 1; level <= colouredCount; level++) {
+            ColoredBoardState board = (ColoredBoardState) LevelReader.readLevel(level, true).toBoardState();
+            if (isDuplicate(board, seen)) {
+                System.out.println("Coloured level " + level + ": DUPLICATE of an earlier level");
+                failures++;
+                continue;
+            }
+            ColoredSolver solver = new ColoredSolver(board.getWidth(), board.getHeight());
+            int[] pressCounts = new int[board.getWidth() * board.getHeight()];
+            int par = solver.solve(board, pressCounts);
+            if (par == -1) {
+                System.out.println("Coloured level " + level + ": UNSOLVABLE");
+                failures++;
+                continue;
+            }
+            String solution = MoveNotation.format(pressCounts, board.getWidth());
+            if (!report("Coloured level " + level, board, par, solution, colouredSolutions.get(level))) {
+                failures++;
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(failures + " level(s) failed verification");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check whether a level is a rotation or reflection of one already seen, and record it if not
+     *
+     * @param board The level
+     * @param seen  Canonical keys of the levels checked so far
+     * @return boolean indicating if an earlier level matches this one
+     */
+    private static boolean isDuplicate(BoardState board, LongHashSet seen) {
+        long key = PackedBoard.canonicalKey(board);
+        return key != -1 && !seen.add(key);
+    }
+
+    /**
+     * Print the par of a level and check its recorded solution
+     *
+     * @param name     Name of the level to print
+     * @param board    The level
+     * @param par      The fewest presses which solve the level
+     * @param solution A minimal solution, in the levelSolutions.txt notation
+     * @param recorded The recorded solution, or null if there is none
+     * @return boolean indicating if the recorded solution is missing or solves the level
+     */
+    private static boolean report(String name, BoardState board, int par, String solution, String recorded) {
+        String result = name + ": par " + par + " (" + solution + ")";
+        boolean passed = true;
+        if (recorded == null) {
+            result += " - no recorded solution";
+        } else if (!solves(board, recorded)) {
+            result += " - recorded solution " + recorded + " does not solve it";
+            passed = false;
+        } else if (MoveNotation.parse(recorded).length > par) {
+            result += " - recorded solution " + recorded + " is not minimal";
+        }
+        System.out.println(result);
+        return passed;
+    }
+
+    /**
+     * Apply recorded presses to a copy of a board and check it ends up solved
+     *
+     * @param board   The level to check
+     * @param recorded Presses in the levelSolutions.txt notation
+     * @return boolean indicating if the presses solve the board
+     */
+    private static boolean solves(BoardState board, String recorded) {
+        BoardState copy = board.copy();
+        for (int[] press : MoveNotation.parse(recorded)) {
+            copy.press(press[0], press[1]);
+        }
+        return copy.isSolved();
+    }
+
+    /**
+     * Read the recorded solutions for either the normal or the coloured levels
+     *
+     * @param coloured Whether to read the coloured section of the file
+     * @return Map of level number to its recorded presses
+     * @throws Exception Where the file cannot be read
+     */
+    private static Map<Integer, String> readSolutions(boolean coloured) throws Exception {
+        Map<Integer, String> solutions = new HashMap<>();
+        Scanner scanner = new Scanner(new File(SOLUTIONS_PATH), StandardCharsets.UTF_8);
+        boolean inColoured = false;
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine().trim();
+            if (line.equals(COLOURED_HEADER)) {
+                inColoured = true;
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (inColoured != coloured || !line.startsWith("Level ") || colon == -1) {
+                continue;
+            }
+            int level = Integer.parseInt(line.substring("Level ".length(), colon).trim());
+            solutions.put(level, line.substring(colon + 1).trim());
+        }
+        scanner.close();
+        return solutions;
+    }
+}
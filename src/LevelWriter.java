@@ -0,0 +1,39 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes boards out in the level file format read by LevelReader: an optional dimensions line for
+ * boards which are not 5x5, one CSV line per row and then the time limit in seconds.
+ */
+public class LevelWriter {
+
+    /**
+     * Write a level file
+     *
+     * @param file      Where to write the level
+     * @param state     The board to write. Normal boards write 0 or 1 per cell, coloured boards 0 to 3.
+     * @param timeLimit Time limit in seconds
+     * @throws IOException Where the file cannot be written
+     */
+    public static void writeLevelFile(Path file, BoardState state, int timeLimit) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (state.getWidth() != Board.BOARD_SIZE || state.getHeight() != Board.BOARD_SIZE) {
+                writer.write(state.getWidth() + "x" + state.getHeight());
+                writer.newLine();
+            }
+            for (int row = 0; row < state.getHeight(); row++) {
+                for (int column = 0; column < state.getWidth(); column++) {
+                    if (column > 0) {
+                        writer.write(',');
+                    }
+                    writer.write('0' + state.getCell(row, column));
+                }
+                writer.newLine();
+            }
+            writer.write(Integer.toString(timeLimit));
+        }
+    }
+}
@@ -0,0 +1,604 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Solves normal variant boards using linear algebra over GF(2).
+ * <p>
+ * 'Chasing the lights' - pressing the light below every lit light, row by row - leaves only the
+ * bottom row lit. The lights left behind are a linear function of which top row lights were pressed
+ * first, so the top row presses which clear the bottom row can be found by solving a
+ * width x width system. That system only depends on the size of the board, so it is reduced once
+ * per size and shared, along with the 'quiet patterns': press sets which change nothing. Every
+ * solution differs from any other by a combination of quiet patterns, so the minimal solution is
+ * found by trying each combination.
+ * <p>
+ * Chasing only works where each press reaches just the row below, as in the standard topology.
+ * For any other topology the full toggle matrix of the board is reduced instead, which costs more
+ * but is still done once per size and topology, and then solving is the sum of a precomputed
+ * solution for each lit light.
+ * <p>
+ * Each solver holds its own scratch space, so solving does not allocate. Solvers are not thread
+ * safe; use one per thread.
+ *
+ * @see <a href="https://www.logicgamesonline.com/lightsout/tutorial.html">LogicGamesOnline</a>
+ */
+public class LightsOutSolver {
+    /**
+     * The widest board this solver supports - each row must fit in a single long.
+     */
+    public static final int MAX_WIDTH = 64;
+    /**
+     * The largest number of quiet patterns that will be searched for a minimal solution. Above
+     * this, solutions are still correct but may not be minimal.
+     */
+    public static final int MAX_MINIMISE_NULLITY = 20;
+    /**
+     * The most cells a board using a topology other than the standard one may have. Those
+     * topologies are reduced as a dense system, taking time in proportion to the cube of the cells;
+     * a board of this many takes around half a second and 12 MB.
+     */
+    public static final int MAX_DENSE_CELLS = 4096;
+
+    private static final ConcurrentHashMap<ToggleMasks, Basis> BASES = new ConcurrentHashMap<>();
+
+    /**
+     * Presses solving each single light of a packed 5x5 board. Solving is linear, so the solution
+     * of any solvable packed board is the XOR of the entries for its lit lights.
+     */
+    private static final int[] PACKED_SOLUTIONS = new int[PackedBoard.CELLS];
+    /**
+     * Quiet patterns of the 5x5 board, packed
+     */
+    private static final int[] PACKED_QUIET;
+
+    static {
+        LightsOutSolver solver = new LightsOutSolver(PackedBoard.SIZE, PackedBoard.SIZE);
+        NormalBoardState board = new NormalBoardState(PackedBoard.SIZE, PackedBoard.SIZE);
+        NormalBoardState presses = new NormalBoardState(PackedBoard.SIZE, PackedBoard.SIZE);
+        for (int cell = 0; cell < PackedBoard.CELLS; cell++) {
+            // Single lights are not always solvable, but the partial chase is still linear
+            board.setPacked(1 << cell);
+            solver.chase(board.readWords());
+            System.arraycopy(solver.presses, 0, presses.getWords(), 0, PackedBoard.SIZE);
+            PACKED_SOLUTIONS[cell] = presses.toPacked();
+        }
+        PACKED_QUIET = new int[solver.getNullity()];
+        for (int i = 0; i < PACKED_QUIET.length; i++) {
+            PACKED_QUIET[i] = solver.getQuietPattern(i).toPacked();
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Topology topology;
+    private final Basis basis;
+    /**
+     * Scratch copy of the board being chased
+     */
+    private final long[] lights;
+    /**
+     * Scratch press set being built up
+     */
+    private final long[] presses;
+
+    /**
+     * Create a solver for boards of the given size using the standard topology
+     *
+     * @param width  Number of lights wide the boards are. At most MAX_WIDTH.
+     * @param height Number of lights high the boards are
+     */
+    public LightsOutSolver(int width, int height) {
+        this(width, height, Topology.STANDARD);
+    }
+
+    /**
+     * Create a solver for boards of the given size and topology
+     *
+     * @param width    Number of lights wide the boards are. At most MAX_WIDTH.
+     * @param height   Number of lights high the boards are
+     * @param topology Rule deciding which lights a press alters
+     * @throws IllegalArgumentException Where the size is unsupported, including boards of more than
+     *                                  MAX_DENSE_CELLS cells using a topology other than the standard
+     *                                  one, or the topology leaves the board with more than 64 quiet
+     *                                  patterns
+     */
+    public LightsOutSolver(int width, int height, Topology topology) {
+        if (width < 1 || width > MAX_WIDTH || height < 1) {
+            throw new IllegalArgumentException("Unsupported board size: " + width + "x" + height);
+        }
+        if (!topology.isStandard() && (long) width * height > MAX_DENSE_CELLS) {
+            throw new IllegalArgumentException("Boards using the " + topology + " topology may have at most "
+                    + MAX_DENSE_CELLS + " cells");
+        }
+        this.width = width;
+        this.height = height;
+        this.topology = topology;
+        ToggleMasks compiled = topology.compile(width, height);
+        Topology.limitCache(BASES, compiled);
+        this.basis = BASES.computeIfAbsent(compiled,
+                masks -> topology.isStandard() ? new Basis(width, height) : new Basis(masks));
+        this.lights = new long[height];
+        this.presses = new long[height];
+    }
+
+    /**
+     * Determines whether the given board can be solved
+     *
+     * @param board The board to check. Must match the size of this solver.
+     * @return boolean indicating if some set of presses turns every light out
+     */
+    public boolean isSolvable(NormalBoardState board) {
+        checkSize(board);
+        return chase(board.readWords()) != -1;
+    }
+
+    /**
+     * Find the minimal set of presses which solves the given board. Does not allocate.
+     *
+     * @param board    The board to solve. Must match the size of this solver.
+     * @param solution Board to write the solution to - each lit light is a press. Must match the size
+     *                 of this solver. Left unchanged if the board is unsolvable.
+     * @return boolean indicating if the board was solvable
+     */
+    public boolean solve(NormalBoardState board, NormalBoardState solution) {
+        checkSize(board);
+        checkSize(solution);
+        if (chase(board.readWords()) == -1) {
+            return false;
+        }
+        minimise();
+        System.arraycopy(presses, 0, solution.getWords(), 0, height);
+        return true;
+    }
+
+    /**
+     * Find the minimal set of presses which solves the given board
+     *
+     * @param board The board to solve. Must match the size of this solver.
+     * @return NormalBoardState where each lit light is a press, or null if the board is unsolvable
+     */
+    public NormalBoardState solve(NormalBoardState board) {
+        NormalBoardState solution = new NormalBoardState(width, height, topology);
+        return this.solve(board, solution) ? solution : null;
+    }
+
+    /**
+     * Find the fewest presses needed to solve the given board - the par for a level
+     *
+     * @param board The board to solve. Must match the size of this solver.
+     * @return int number of presses, or -1 if the board is unsolvable
+     */
+    public int minimumMoves(NormalBoardState board) {
+        checkSize(board);
+        if (chase(board.readWords()) == -1) {
+            return -1;
+        }
+        return minimise();
+    }
+
+    /**
+     * Retrieve the number of independent quiet patterns for this size of board
+     *
+     * @return int dimension of the null space of the toggle matrix
+     */
+    public int getNullity() {
+        return basis.quietPatterns.length;
+    }
+
+    /**
+     * Retrieve a quiet pattern - a non-empty set of presses which leaves any board unchanged.
+     * Where the topology is symmetric, a board is solvable exactly when it has an even number of lit
+     * lights in common with every quiet pattern.
+     *
+     * @param index Which quiet pattern to retrieve, from 0 to getNullity() - 1
+     * @return NormalBoardState where each lit light is a press
+     */
+    public NormalBoardState getQuietPattern(int index) {
+        NormalBoardState pattern = new NormalBoardState(width, height, topology);
+        System.arraycopy(basis.quietPatterns[index], 0, pattern.getWords(), 0, height);
+        return pattern;
+    }
+
+    /**
+     * Determines whether a packed 5x5 board can be solved
+     *
+     * @param state Packed board, as described in PackedBoard
+     * @return boolean indicating if some set of presses turns every light out
+     */
+    public static boolean isSolvablePacked(int state) {
+        for (int quiet : PACKED_QUIET) {
+            if ((Integer.bitCount(state & quiet) & 1) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the minimal set of presses which solves a packed 5x5 board
+     *
+     * @param state Packed board, as described in PackedBoard
+     * @return Packed press set, or -1 if the board is unsolvable
+     */
+    public static int solvePacked(int state) {
+        if (!isSolvablePacked(state)) {
+            return -1;
+        }
+        int solution = 0;
+        for (int lit = state; lit != 0; lit &= lit - 1) {
+            solution ^= PACKED_SOLUTIONS[Integer.numberOfTrailingZeros(lit)];
+        }
+
+        int best = solution;
+        for (int combination = 1; combination < 1 << PACKED_QUIET.length; combination++) {
+            int candidate = solution;
+            for (int i = 0; i < PACKED_QUIET.length; i++) {
+                if ((combination & (1 << i)) != 0) {
+                    candidate ^= PACKED_QUIET[i];
+                }
+            }
+            if (Integer.bitCount(candidate) < Integer.bitCount(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the fewest presses needed to solve a packed 5x5 board
+     *
+     * @param state Packed board, as described in PackedBoard
+     * @return int number of presses, or -1 if the board is unsolvable
+     */
+    public static int minimumMovesPacked(int state) {
+        int solution = solvePacked(state);
+        return solution == -1 ? -1 : Integer.bitCount(solution);
+    }
+
+    /**
+     * Retrieve which quiet patterns contain the given cell. Bit i is set if quiet pattern i presses
+     * the cell, or for asymmetric topologies, if the cell is in the i-th combination of lights
+     * which no presses can change the parity of. The XOR of this over every lit light of a board is
+     * its syndrome, and the board is solvable exactly when its syndrome is zero, so toggling a single
+     * light updates the syndrome with one XOR.
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return long with a bit per quiet pattern
+     */
+    public long getCellSyndrome(int row, int column) {
+        return basis.cellSyndromes[row * width + column];
+    }
+
+    /**
+     * Calculate the syndrome of a whole board - the XOR of getCellSyndrome over its lit lights
+     *
+     * @param board The board to check. Must match the size of this solver.
+     * @return long which is zero exactly when the board is solvable
+     */
+    public long syndrome(NormalBoardState board) {
+        checkSize(board);
+        long[] words = board.readWords();
+        long syndrome = 0;
+        for (int row = 0; row < height; row++) {
+            for (long lit = words[row]; lit != 0; lit &= lit - 1) {
+                syndrome ^= basis.cellSyndromes[row * width + Long.numberOfTrailingZeros(lit)];
+            }
+        }
+        return syndrome;
+    }
+
+    /**
+     * Chase the lights of the given board into the scratch press set, then correct it using the
+     * top row basis so that it solves the board.
+     *
+     * @param board Words of the board, one per row
+     * @return 0 if the scratch press set now solves the board, -1 if the board is unsolvable
+     */
+    private int chase(long[] board) {
+        if (basis.cellSolutions != null) {
+            // Any other topology: sum the solution of each lit light
+            Arrays.fill(presses, 0);
+            long syndrome = 0;
+            for (int row = 0; row < height; row++) {
+                for (long lit = board[row]; lit != 0; lit &= lit - 1) {
+                    int cell = row * width + Long.numberOfTrailingZeros(lit);
+                    syndrome ^= basis.cellSyndromes[cell];
+                    xor(presses, basis.cellSolutions[cell]);
+                }
+            }
+            return syndrome == 0 ? 0 : -1;
+        }
+        System.arraycopy(board, 0, lights, 0, height);
+        long rowMask = basis.rowMask;
+        // Press below every lit light, leaving only the bottom row lit
+        presses[0] = 0;
+        for (int row = 0; row < height - 1; row++) {
+            long press = lights[row];
+            presses[row + 1] = press;
+            lights[row] = 0;
+            lights[row + 1] ^= (press ^ (press << 1) ^ (press >>> 1)) & rowMask;
+            if (row + 2 < height) {
+                lights[row + 2] ^= press;
+            }
+        }
+
+        // Find the top row presses which clear the remaining lights
+        long residual = lights[height - 1];
+        long[] pivots = basis.pivotBits;
+        for (int i = 0; i < pivots.length; i++) {
+            if ((residual & pivots[i]) != 0) {
+                residual ^= basis.pivotResiduals[i];
+                long[] correction = basis.pivotPresses[i];
+                for (int row = 0; row < height; row++) {
+                    presses[row] ^= correction[row];
+                }
+            }
+        }
+        return residual == 0 ? 0 : -1;
+    }
+
+    /**
+     * Replace the scratch press set with the smallest one obtainable by adding quiet patterns.
+     * Combinations are visited in Gray code order so that each step adds a single pattern.
+     *
+     * @return int number of presses in the minimal solution
+     */
+    private int minimise() {
+        long[][] quiet = basis.quietPatterns;
+        int best = count(presses);
+        if (quiet.length == 0 || quiet.length > MAX_MINIMISE_NULLITY) {
+            return best;
+        }
+        // Walk every combination of quiet patterns, remembering the smallest
+        int bestCombination = 0;
+        int combination = 0;
+        int combinations = 1 << quiet.length;
+        for (int step = 1; step < combinations; step++) {
+            int changed = Integer.numberOfTrailingZeros(step);
+            combination ^= 1 << changed;
+            xor(presses, quiet[changed]);
+            int moves = count(presses);
+            if (moves < best) {
+                best = moves;
+                bestCombination = combination;
+            }
+        }
+        // The walk finishes on the last Gray code, so undo it then apply the best combination
+        int finalCombination = combination ^ bestCombination;
+        for (int i = 0; i < quiet.length; i++) {
+            if ((finalCombination & (1 << i)) != 0) {
+                xor(presses, quiet[i]);
+            }
+        }
+        return best;
+    }
+
+    private static int count(long[] rows) {
+        int total = 0;
+        for (long row : rows) {
+            total += Long.bitCount(row);
+        }
+        return total;
+    }
+
+    private static void xor(long[] target, long[] source) {
+        for (int row = 0; row < target.length; row++) {
+            target[row] ^= source[row];
+        }
+    }
+
+    private void checkSize(NormalBoardState board) {
+        if (board.getWidth() != width || board.getHeight() != height) {
+            throw new IllegalArgumentException("Board is " + board.getWidth() + "x" + board.getHeight()
+                    + " but solver is " + width + "x" + height);
+        }
+        if (!board.getTopology().equals(topology)) {
+            throw new IllegalArgumentException("Board uses the " + board.getTopology() + " topology but solver uses "
+                    + topology);
+        }
+    }
+
+    /**
+     * The reduced system for one size of board and topology. For the standard topology this is
+     * the top row system; for any other it is the full toggle matrix.
+     */
+    private static class Basis {
+        private final long rowMask;
+        /**
+         * Bottom row residuals which the top row can clear, reduced so that each has a distinct
+         * pivot bit that no later residual contains.
+         */
+        private final long[] pivotResiduals;
+        private final long[] pivotBits;
+        /**
+         * The full press set which produces each pivot residual
+         */
+        private final long[][] pivotPresses;
+        private final long[][] quietPatterns;
+        /**
+         * For each cell, a bit per quiet pattern which contains it
+         */
+        private final long[] cellSyndromes;
+        /**
+         * Presses solving each single light, as far as it can be, one long per row. Only used for
+         * topologies other than the standard one, so null otherwise.
+         */
+        private final long[][] cellSolutions;
+
+        private Basis(int width, int height) {
+            this.cellSolutions = null;
+            this.rowMask = width == 64 ? -1L : (1L << width) - 1;
+
+            long[] residuals = new long[width];
+            long[][] pressSets = new long[width][];
+            int pivotCount = 0;
+            long[][] quiet = new long[width][];
+            int quietCount = 0;
+            long[] pivots = new long[width];
+
+            for (int column = 0; column < width; column++) {
+                // Chase an empty board after pressing a single top row light
+                long[] lights = new long[height];
+                long[] pressed = new long[height];
+                pressed[0] = 1L << column;
+                applyRow(lights, 0, pressed[0], rowMask, height);
+                for (int row = 0; row < height - 1; row++) {
+                    long press = lights[row];
+                    pressed[row + 1] = press;
+                    applyRow(lights, row + 1, press, rowMask, height);
+                }
+                long residual = lights[height - 1];
+
+                // Reduce against the pivots found so far
+                for (int i = 0; i < pivotCount; i++) {
+                    if ((residual & pivots[i]) != 0) {
+                        residual ^= residuals[i];
+                        for (int row = 0; row < height; row++) {
+                            pressed[row] ^= pressSets[i][row];
+                        }
+                    }
+                }
+
+                if (residual == 0) {
+                    // These presses change nothing
+                    quiet[quietCount++] = pressed;
+                } else {
+                    residuals[pivotCount] = residual;
+                    pivots[pivotCount] = Long.lowestOneBit(residual);
+                    pressSets[pivotCount] = pressed;
+                    pivotCount++;
+                }
+            }
+
+            this.pivotResiduals = Arrays.copyOf(residuals, pivotCount);
+            this.pivotBits = Arrays.copyOf(pivots, pivotCount);
+            this.pivotPresses = Arrays.copyOf(pressSets, pivotCount);
+            this.quietPatterns = Arrays.copyOf(quiet, quietCount);
+
+            // A board is solvable exactly when it is orthogonal to every quiet pattern, as the
+            // toggle matrix is symmetric
+            this.cellSyndromes = new long[width * height];
+            for (int i = 0; i < quietCount; i++) {
+                for (int row = 0; row < height; row++) {
+                    for (long pressed = quiet[i][row]; pressed != 0; pressed &= pressed - 1) {
+                        cellSyndromes[row * width + Long.numberOfTrailingZeros(pressed)] |= 1L << i;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reduce the full toggle matrix of a topology other than the standard one. Row t of the
+         * system holds the presses which toggle cell t, and is reduced alongside the combination of
+         * original rows it has become, so that once reduced the combinations give the solution of
+         * each single light and the rows left empty give the syndromes.
+         */
+        private Basis(ToggleMasks masks) {
+            int width = masks.getWidth();
+            int height = masks.getHeight();
+            int cells = width * height;
+            int words = (cells + 63) >>> 6;
+            this.rowMask = width == 64 ? -1L : (1L << width) - 1;
+            this.pivotResiduals = new long[0];
+            this.pivotBits = new long[0];
+            this.pivotPresses = new long[0][];
+
+            long[][] system = new long[cells][words];
+            long[][] combinations = new long[cells][words];
+            int[] toggled = new int[masks.getMaxToggled()];
+            for (int cell = 0; cell < cells; cell++) {
+                int count = masks.getToggledCells(cell / width, cell % width, toggled);
+                for (int i = 0; i < count; i++) {
+                    system[toggled[i]][cell >>> 6] |= 1L << cell;
+                }
+                combinations[cell][cell >>> 6] |= 1L << cell;
+            }
+
+            int rank = 0;
+            int[] pivotCells = new int[cells];
+            for (int cell = 0; cell < cells && rank < cells; cell++) {
+                int word = cell >>> 6;
+                long bit = 1L << cell;
+                int found = rank;
+                while (found < cells && (system[found][word] & bit) == 0) {
+                    found++;
+                }
+                if (found == cells) {
+                    continue;
+                }
+                long[] swap = system[found];
+                system[found] = system[rank];
+                system[rank] = swap;
+                swap = combinations[found];
+                combinations[found] = combinations[rank];
+                combinations[rank] = swap;
+                for (int row = 0; row < cells; row++) {
+                    if (row != rank && (system[row][word] & bit) != 0) {
+                        xor(system[row], system[rank]);
+                        xor(combinations[row], combinations[rank]);
+                    }
+                }
+                pivotCells[rank++] = cell;
+            }
+
+            int nullity = cells - rank;
+            if (nullity > Long.SIZE) {
+                throw new IllegalArgumentException("A " + width + "x" + height + " board using the " + masks.getTopology()
+                        + " topology has more than " + Long.SIZE + " quiet patterns");
+            }
+
+            // Each press without a pivot gives a quiet pattern, completed by the pivots it reaches
+            this.quietPatterns = new long[nullity][];
+            boolean[] pivot = new boolean[cells];
+            for (int i = 0; i < rank; i++) {
+                pivot[pivotCells[i]] = true;
+            }
+            int quietCount = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                if (pivot[cell]) {
+                    continue;
+                }
+                long[] pattern = new long[height];
+                pattern[cell / width] |= 1L << (cell % width);
+                for (int i = 0; i < rank; i++) {
+                    if ((system[i][cell >>> 6] & (1L << cell)) != 0) {
+                        pattern[pivotCells[i] / width] |= 1L << (pivotCells[i] % width);
+                    }
+                }
+                quietPatterns[quietCount++] = pattern;
+            }
+
+            // Pivot rows give each light's solution, and empty rows are the syndromes
+            this.cellSyndromes = new long[cells];
+            this.cellSolutions = new long[cells][height];
+            for (int cell = 0; cell < cells; cell++) {
+                int word = cell >>> 6;
+                long bit = 1L << cell;
+                for (int i = 0; i < rank; i++) {
+                    if ((combinations[i][word] & bit) != 0) {
+                        cellSolutions[cell][pivotCells[i] / width] |= 1L << (pivotCells[i] % width);
+                    }
+                }
+                for (int i = rank; i < cells; i++) {
+                    if ((combinations[i][word] & bit) != 0) {
+                        cellSyndromes[cell] |= 1L << (i - rank);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Press every light of a row mask at once, as the chase does
+         */
+        private static void applyRow(long[] lights, int row, long press, long rowMask, int height) {
+            if (row - 1 >= 0) {
+                lights[row - 1] ^= press;
+            }
+            lights[row] ^= (press ^ (press << 1) ^ (press >>> 1)) & rowMask;
+            if (row + 1 < height) {
+                lights[row + 1] ^= press;
+            }
+        }
+    }
+}
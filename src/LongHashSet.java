@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+/**
+ * A set of longs using open addressing, so that each entry is stored as a primitive in a single
+ * array rather than as a boxed Long in a node. Used to deduplicate packed boards, where a
+ * HashSet&lt;Long&gt; would use several times the memory.
+ * <p>
+ * Not thread safe.
+ */
+public class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+    /**
+     * Marks an empty slot. The value itself is tracked separately.
+     */
+    private static final long EMPTY = 0;
+
+    private long[] slots;
+    private int size;
+    private boolean containsEmpty;
+
+    /**
+     * Create an empty set
+     */
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty set which can hold the given number of values before growing
+     *
+     * @param expectedSize Number of values expected
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // Stay at most half full
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+    }
+
+    /**
+     * Add a value to the set
+     *
+     * @param value The value to add
+     * @return boolean indicating if the value was not already present
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash(value) & mask; ; slot = (slot + 1) & mask) {
+            long current = slots[slot];
+            if (current == value) {
+                return false;
+            }
+            if (current == EMPTY) {
+                slots[slot] = value;
+                size++;
+                if (size * 2 > slots.length) {
+                    grow();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add every value from another set
+     *
+     * @param other The set to copy values from
+     */
+    public void addAll(LongHashSet other) {
+        if (other.containsEmpty) {
+            this.add(EMPTY);
+        }
+        for (long value : other.slots) {
+            if (value != EMPTY) {
+                this.add(value);
+            }
+        }
+    }
+
+    /**
+     * Determines if a value is in the set
+     *
+     * @param value The value to look for
+     * @return boolean indicating if the value is present
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash(value) & mask; ; slot = (slot + 1) & mask) {
+            long current = slots[slot];
+            if (current == value) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Retrieve the number of values in the set
+     *
+     * @return int number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every value from the set, keeping its capacity
+     */
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsEmpty = false;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length << 1];
+        int mask = slots.length - 1;
+        for (long value : old) {
+            if (value == EMPTY) {
+                continue;
+            }
+            int slot = hash(value) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = value;
+        }
+    }
+
+    /**
+     * Spread the bits of a value so that similar boards land in different slots
+     */
+    private static int hash(long value) {
+        // Finaliser from MurmurHash3
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
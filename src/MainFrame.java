@@ -3,6 +3,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Entry point for LightsOut. Contains the start menu and manages the creation of various sub-classes
@@ -19,6 +20,7 @@ public class MainFrame {
     // Variant options
     private boolean colouredMode = false;
     private boolean timeLimit = false;
+    private Topology topology = Topology.STANDARD;
 
     public MainFrame() {
         JFrame frame = new JFrame();
@@ -79,21 +81,31 @@ public class MainFrame {
         levelSelector.setPreferredSize(new Dimension(120, 25));
         levelSelector.setFont(new Font("", Font.PLAIN, 14));
         levelSelector.setMaximumSize(levelSelector.getPreferredSize());
-        for (int i = 1; i < 16; i++) {
-            levelSelector.addItem(i);
-        }
+        fillLevelSelector(levelSelector);
 
         JPanel checkboxes = new JPanel();
         JCheckBox timeLimit = new JCheckBox("Apply time limit", this.getTimeLimitEnabled());
         JCheckBox colouredBoard = new JCheckBox("Use multi-coloured variant", this.getColouredEnabled());
         timeLimit.addActionListener(e -> this.setTimeLimitEnabled(!this.timeLimit));
-        colouredBoard.addActionListener(e -> this.setColoured(!this.colouredMode));
+        colouredBoard.addActionListener(e -> {
+            this.setColoured(!this.colouredMode);
+            // The variants may have different numbers of levels
+            fillLevelSelector(levelSelector);
+        });
         checkboxes.setOpaque(false);
         timeLimit.setOpaque(false);
         colouredBoard.setOpaque(false);
         checkboxes.add(timeLimit);
         checkboxes.add(colouredBoard);
 
+        //create drop down menu where the press rule of edited boards can be selected. Levels are
+        //always played with the rule they were authored for.
+        JComboBox<Topology> topologySelector = new JComboBox<>(Topology.values());
+        topologySelector.setSelectedItem(this.getTopology());
+        topologySelector.addActionListener(e -> this.setTopology((Topology) topologySelector.getSelectedItem()));
+        checkboxes.add(new JLabel("Editor neighbourhood:"));
+        checkboxes.add(topologySelector);
+
         //create back button to be used to go back to the main menu
         JButton backButton = new JButton("Back");
         backButton.setPreferredSize(new Dimension(80, 40));
@@ -154,7 +166,7 @@ public class MainFrame {
                     // It was cancelled
                     menuPanel.setVisible(true);
                 }
-            });
+            }, topology);
             menuPanel.setVisible(false);
             backButton.setVisible(true);
         });
@@ -208,10 +220,16 @@ public class MainFrame {
     }
 
     /**
-     * Starts the program by instantiating a new main frame
-     * @param args Program arguments
+     * Starts the program by instantiating a new main frame, or with "server" as the first argument
+     * hosts games over the network instead
+     * @param args Program arguments. "server" may be followed by the port to listen on.
+     * @throws IOException Where the game server cannot be started
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("server")) {
+            GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         MainFrame frame = new MainFrame();
     }
 
@@ -223,6 +241,23 @@ public class MainFrame {
         this.colouredMode = newState;
     }
 
+    /**
+     * Offer every level of the active variant in the level selector, keeping the selected level
+     * where it exists in that variant
+     * @param levelSelector The drop down menu of levels
+     */
+    private void fillLevelSelector(JComboBox<Integer> levelSelector) {
+        Object selected = levelSelector.getSelectedItem();
+        levelSelector.removeAllItems();
+        int levelCount = LevelReader.countLevels(this.getColouredEnabled());
+        for (int i = 1; i <= levelCount; i++) {
+            levelSelector.addItem(i);
+        }
+        if (selected != null && (Integer) selected <= levelCount) {
+            levelSelector.setSelectedItem(selected);
+        }
+    }
+
     /**
      * Retrieve boolean indicating whether time limit should be applied
      * @return boolean
@@ -246,6 +281,23 @@ public class MainFrame {
         }
     }
 
+    /**
+     * Sets the rule deciding which lights a press alters on boards made in the board editor
+     * started afterwards. Levels are always played with the rule they were authored for.
+     * @param topology The topology to edit with
+     */
+    public void setTopology(Topology topology) {
+        this.topology = topology;
+    }
+
+    /**
+     * Retrieves the rule deciding which lights a press alters
+     * @return Topology used by the board editor
+     */
+    public Topology getTopology() {
+        return this.topology;
+    }
+
     /**
      * Retrieves whether coloured mode is enabled
      * @return boolean indicating if a ColouredGame should be used
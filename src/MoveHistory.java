@@ -0,0 +1,183 @@
+import java.util.Arrays;
+
+/**
+ * Remembers the presses and toggles made on a board so they can be undone and redone. Only the
+ * cell of each move is kept, never a copy of the board, so each step costs a few bytes however
+ * large the board is.
+ * <p>
+ * Normal presses and toggles undo themselves, so undoing one just makes it again. Coloured cells
+ * cycle 1 -> 2 -> 3 -> 1, so two more presses undo a press, except for green cells which leave the
+ * cycle on their first press and can never be pressed back to green. The cells which were green
+ * before each coloured move are kept as a small mask, one bit per cell the move altered in the
+ * order given by ToggleMasks.getToggledCells, and set back to green after the two presses.
+ */
+public final class MoveHistory {
+    /**
+     * Cell index of each move shifted left once, with the low bit set for toggles
+     */
+    private int[] moves = new int[16];
+    /**
+     * Cells of each coloured move which were green beforehand. Created for the first coloured move.
+     */
+    private int[] greens = null;
+    /**
+     * Scratch list of the cells altered by a coloured press
+     */
+    private int[] toggled = null;
+    /**
+     * Number of moves which can be undone
+     */
+    private int size = 0;
+    /**
+     * Number of moves held, including those undone which can be redone
+     */
+    private int end = 0;
+
+    /**
+     * Press a cell and record the press, dropping any moves which could have been redone
+     *
+     * @param state  Board to press
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     */
+    public void press(BoardState state, int row, int column) {
+        this.push(state, row, column, false);
+        state.press(row, column);
+    }
+
+    /**
+     * Toggle a single cell and record the toggle, dropping any moves which could have been redone
+     *
+     * @param state  Board to toggle
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     */
+    public void toggle(BoardState state, int row, int column) {
+        this.push(state, row, column, true);
+        state.toggle(row, column);
+    }
+
+    private void push(BoardState state, int row, int column, boolean toggle) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+            if (greens != null) {
+                greens = Arrays.copyOf(greens, moves.length);
+            }
+        }
+        moves[size] = (row * state.getWidth() + column) << 1 | (toggle ? 1 : 0);
+        if (state instanceof ColoredBoardState) {
+            if (greens == null) {
+                greens = new int[moves.length];
+            }
+            greens[size] = this.greenMask(state, row, column, toggle);
+        }
+        size++;
+        end = size;
+    }
+
+    private int greenMask(BoardState state, int row, int column, boolean toggle) {
+        if (toggle) {
+            return state.getCell(row, column) == 0 ? 1 : 0;
+        }
+        int count = this.toggledCells(state, row, column);
+        int mask = 0;
+        for (int i = 0; i < count; i++) {
+            if (state.getCell(toggled[i] / state.getWidth(), toggled[i] % state.getWidth()) == 0) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    private int toggledCells(BoardState state, int row, int column) {
+        ToggleMasks masks = state.getToggleMasks();
+        if (toggled == null || toggled.length < masks.getMaxToggled()) {
+            toggled = new int[masks.getMaxToggled()];
+        }
+        return masks.getToggledCells(row, column, toggled);
+    }
+
+    /**
+     * Undo the last move which has not been undone
+     *
+     * @param state Board the moves were made on
+     * @return int cell index (row * width + column) of the move undone, or -1 if there is none
+     */
+    public int undo(BoardState state) {
+        if (size == 0) {
+            return -1;
+        }
+        size--;
+        int cell = moves[size] >>> 1;
+        boolean toggle = (moves[size] & 1) != 0;
+        int row = cell / state.getWidth();
+        int column = cell % state.getWidth();
+        this.apply(state, row, column, toggle);
+        if (state instanceof ColoredBoardState) {
+            // Two more moves take every other cell back around the cycle
+            this.apply(state, row, column, toggle);
+            int mask = greens[size];
+            if (mask != 0 && toggle) {
+                state.setCell(row, column, 0);
+            } else if (mask != 0) {
+                this.toggledCells(state, row, column);
+                for (int i = 0; mask != 0; i++, mask >>>= 1) {
+                    if ((mask & 1) != 0) {
+                        state.setCell(toggled[i] / state.getWidth(), toggled[i] % state.getWidth(), 0);
+                    }
+                }
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * Make the last move undone again
+     *
+     * @param state Board the moves were made on
+     * @return int cell index (row * width + column) of the move redone, or -1 if there is none
+     */
+    public int redo(BoardState state) {
+        if (size == end) {
+            return -1;
+        }
+        int cell = moves[size] >>> 1;
+        this.apply(state, cell / state.getWidth(), cell % state.getWidth(), (moves[size] & 1) != 0);
+        size++;
+        return cell;
+    }
+
+    private void apply(BoardState state, int row, int column, boolean toggle) {
+        if (toggle) {
+            state.toggle(row, column);
+        } else {
+            state.press(row, column);
+        }
+    }
+
+    /**
+     * Determines whether there is a move to undo
+     *
+     * @return boolean indicating if undo will change the board
+     */
+    public boolean canUndo() {
+        return size > 0;
+    }
+
+    /**
+     * Determines whether there is a move to redo
+     *
+     * @return boolean indicating if redo will change the board
+     */
+    public boolean canRedo() {
+        return size < end;
+    }
+
+    /**
+     * Forget every move, such as when a new level is loaded
+     */
+    public void clear() {
+        size = 0;
+        end = 0;
+    }
+}
@@ -0,0 +1,396 @@
+import java.util.Arrays;
+
+/**
+ * Records the presses made on a board, with when each was made, as a compact byte stream. Each
+ * move is stored as two unsigned variable-length integers, seven bits per byte with the top bit
+ * set on every byte but the last. The first is the cell index (row * width + column) shifted left
+ * once for a press, or UNDO or REDO, which are odd. The second is the milliseconds since the
+ * previous move. A press on a board of up to 64 cells a second or so after the last takes three
+ * bytes.
+ * <p>
+ * Undone presses are kept in the log, followed by the undo, so replaying a log reproduces
+ * everything the player did. Replaying undos uses a MoveHistory.
+ * <p>
+ * A log can be replayed against a headless board at millions of presses per second, to check a
+ * submitted solve or to reproduce a reported bug exactly, or animated on a Board with Board.replay.
+ * <p>
+ * Serialised logs start with the width, height and number of moves as variable-length integers,
+ * followed by the moves.
+ */
+public final class MoveLog {
+    /**
+     * The most cells a board may have, so that shifted cell indexes fit in an int
+     */
+    public static final int MAX_CELLS = 1 << 30;
+    private static final int UNDO = 1;
+    private static final int REDO = 3;
+
+    private final int width;
+    private final int height;
+    private byte[] data = new byte[64];
+    private int length = 0;
+    private int count = 0;
+    private int undoCount = 0;
+    private long lastTime = 0;
+
+    /**
+     * Create an empty log for a board
+     *
+     * @param width  Number of cells per row
+     * @param height Number of rows
+     */
+    public MoveLog(int width, int height) {
+        if (width < 1 || height < 1 || (long) width * height > MAX_CELLS) {
+            throw new IllegalArgumentException("Board must have between 1 and " + MAX_CELLS + " cells");
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Retrieve the width of the board this log is for
+     *
+     * @return int number of cells per row
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieve the height of the board this log is for
+     *
+     * @return int number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieve the number of moves recorded, including undos and redos
+     *
+     * @return int number of moves
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Retrieve when the last move was made
+     *
+     * @return long time in milliseconds since the log was started, or 0 if it is empty
+     */
+    public long getTotalTime() {
+        return lastTime;
+    }
+
+    /**
+     * Forget every move
+     */
+    public void clear() {
+        length = 0;
+        count = 0;
+        undoCount = 0;
+        lastTime = 0;
+    }
+
+    /**
+     * Record a press
+     *
+     * @param row    Row position of the cell pressed
+     * @param column Column position of the cell pressed
+     * @param time   When the press was made, in milliseconds since the log was started. Must not be
+     *               before the previous press.
+     */
+    public void record(int row, int column, long time) {
+        if (row < 0 || row >= height || column < 0 || column >= width) {
+            throw new IndexOutOfBoundsException("Cell " + row + "," + column + " is not on the board");
+        }
+        this.write(((long) row * width + column) << 1, time);
+    }
+
+    /**
+     * Record that the last move which had not been undone was undone
+     *
+     * @param time When the undo was made, in milliseconds since the log was started
+     */
+    public void recordUndo(long time) {
+        this.write(UNDO, time);
+        undoCount++;
+    }
+
+    /**
+     * Record that the last move undone was made again
+     *
+     * @param time When the redo was made, in milliseconds since the log was started
+     */
+    public void recordRedo(long time) {
+        this.write(REDO, time);
+        undoCount++;
+    }
+
+    private void write(long move, long time) {
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Moves must be recorded in time order");
+        }
+        this.writeVarint(move);
+        this.writeVarint(time - lastTime);
+        lastTime = time;
+        count++;
+    }
+
+    private void writeVarint(long value) {
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * Apply every move in the log to a board
+     *
+     * @param state Board of the same size as the log, usually holding the level the log was
+     *              recorded on
+     */
+    public void replay(BoardState state) {
+        this.replay(state, count);
+    }
+
+    /**
+     * Apply the first moves in the log to a board
+     *
+     * @param state   Board of the same size as the log
+     * @param presses Number of moves to apply, including undos and redos
+     */
+    public void replay(BoardState state, int presses) {
+        if (state.getWidth() != width || state.getHeight() != height) {
+            throw new IllegalArgumentException("Log is for a " + width + "x" + height + " board");
+        }
+        if (undoCount > 0) {
+            MoveHistory history = new MoveHistory();
+            Cursor cursor = this.cursor();
+            for (int press = Math.min(presses, count); press > 0 && cursor.next(); press--) {
+                if (cursor.isUndo()) {
+                    history.undo(state);
+                } else if (cursor.isRedo()) {
+                    history.redo(state);
+                } else {
+                    history.press(state, cursor.getRow(), cursor.getColumn());
+                }
+            }
+            return;
+        }
+        byte[] bytes = data;
+        int position = 0;
+        for (int press = Math.min(presses, count); press > 0; press--) {
+            // Read the cell index, with the common single byte case first
+            int cell = bytes[position++];
+            if (cell < 0) {
+                cell &= 0x7F;
+                int shift = 7;
+                int next;
+                do {
+                    next = bytes[position++];
+                    cell |= (next & 0x7F) << shift;
+                    shift += 7;
+                } while (next < 0);
+            }
+            // Skip the time
+            while (bytes[position++] < 0) {
+                // Continue to the last byte of the time
+            }
+            cell >>>= 1;
+            state.press(cell / width, cell % width);
+        }
+    }
+
+    /**
+     * Determines whether the log solves a level, by replaying it against a copy of the level
+     *
+     * @param level The level the log was recorded on. It is not changed.
+     * @return boolean indicating if every light is off once the log has been replayed
+     */
+    public boolean solves(BoardState level) {
+        BoardState state = level.copy();
+        this.replay(state);
+        return state.isSolved();
+    }
+
+    /**
+     * Start reading the moves in order
+     *
+     * @return Cursor before the first move
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Reads the moves of a log in order, with when each was made
+     */
+    public final class Cursor {
+        private int position = 0;
+        private int read = 0;
+        private int move;
+        private long delay;
+        private long time = 0;
+
+        private Cursor() {
+        }
+
+        /**
+         * Move to the next move
+         *
+         * @return boolean indicating if there was another move
+         */
+        public boolean next() {
+            if (read == count) {
+                return false;
+            }
+            move = (int) this.readVarint();
+            delay = this.readVarint();
+            time += delay;
+            read++;
+            return true;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte next;
+            do {
+                next = data[position++];
+                value |= (long) (next & 0x7F) << shift;
+                shift += 7;
+            } while (next < 0);
+            return value;
+        }
+
+        /**
+         * Determines whether the current move undid the last move which had not been undone
+         *
+         * @return boolean indicating if the move is an undo
+         */
+        public boolean isUndo() {
+            return move == UNDO;
+        }
+
+        /**
+         * Determines whether the current move made the last move undone again
+         *
+         * @return boolean indicating if the move is a redo
+         */
+        public boolean isRedo() {
+            return move == REDO;
+        }
+
+        /**
+         * Retrieve the row of the current press. Meaningless for undos and redos.
+         *
+         * @return int row position of the cell pressed
+         */
+        public int getRow() {
+            return (move >>> 1) / width;
+        }
+
+        /**
+         * Retrieve the column of the current press. Meaningless for undos and redos.
+         *
+         * @return int column position of the cell pressed
+         */
+        public int getColumn() {
+            return (move >>> 1) % width;
+        }
+
+        /**
+         * Retrieve when the current move was made
+         *
+         * @return long time in milliseconds since the log was started
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Retrieve the time between the previous move and the current one
+         *
+         * @return long time in milliseconds
+         */
+        public long getDelay() {
+            return delay;
+        }
+    }
+
+    /**
+     * Serialise the log
+     *
+     * @return byte[] holding the board size, number of moves and every move
+     */
+    public byte[] toByteArray() {
+        MoveLog header = new MoveLog(1, 1);
+        header.writeVarint(width);
+        header.writeVarint(height);
+        header.writeVarint(count);
+        byte[] bytes = Arrays.copyOf(header.data, header.length + length);
+        System.arraycopy(data, 0, bytes, header.length, length);
+        return bytes;
+    }
+
+    /**
+     * Read a serialised log, checking that every press is on the board
+     *
+     * @param bytes Bytes written by toByteArray
+     * @return MoveLog holding the presses
+     * @throws IllegalArgumentException Where the bytes are not a valid log
+     */
+    public static MoveLog fromByteArray(byte[] bytes) {
+        int[] position = {0};
+        long width = readVarint(bytes, position);
+        long height = readVarint(bytes, position);
+        long presses = readVarint(bytes, position);
+        if (width < 1 || height < 1 || width * height > MAX_CELLS || presses > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid move log header");
+        }
+        MoveLog log = new MoveLog((int) width, (int) height);
+        long time = 0;
+        for (long press = 0; press < presses; press++) {
+            long move = readVarint(bytes, position);
+            long delay = readVarint(bytes, position);
+            boolean validMove = (move & 1) == 0 ? (move >>> 1) < width * height : move == UNDO || move == REDO;
+            if (!validMove || delay < 0 || time + delay < time) {
+                throw new IllegalArgumentException("Invalid move " + press + " in move log");
+            }
+            time += delay;
+            if (move == UNDO) {
+                log.recordUndo(time);
+            } else if (move == REDO) {
+                log.recordRedo(time);
+            } else {
+                long cell = move >>> 1;
+                log.record((int) (cell / width), (int) (cell % width), time);
+            }
+        }
+        if (position[0] != bytes.length) {
+            throw new IllegalArgumentException("Unexpected data after the last move in move log");
+        }
+        return log;
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Move log is truncated");
+            }
+            byte next = bytes[position[0]++];
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid number in move log");
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes presses in the notation used by levelSolutions.txt, for example "B3, E1".
+ * The letter is the column, starting from A, and the number is the row, starting from 1. Columns
+ * beyond Z continue as AA, AB and so on.
+ */
+public final class MoveNotation {
+    private static final String SEPARATOR = ", ";
+
+    private MoveNotation() {
+    }
+
+    /**
+     * Retrieve the name of a cell
+     *
+     * @param row    Row position of the cell
+     * @param column Column position of the cell
+     * @return String such as "B3"
+     */
+    public static String cellName(int row, int column) {
+        StringBuilder name = new StringBuilder();
+        appendCell(name, row, column);
+        return name.toString();
+    }
+
+    private static void appendCell(StringBuilder builder, int row, int column) {
+        int start = builder.length();
+        for (int remaining = column + 1; remaining > 0; remaining = (remaining - 1) / 26) {
+            builder.insert(start, (char) ('A' + (remaining - 1) % 26));
+        }
+        builder.append(row + 1);
+    }
+
+    /**
+     * Write out a press set, in row order
+     *
+     * @param presses Board where each lit light is a press
+     * @return String such as "B3, E1". Empty if there are no presses.
+     */
+    public static String format(NormalBoardState presses) {
+        StringBuilder builder = new StringBuilder();
+        for (int row = 0; row < presses.getHeight(); row++) {
+            for (int column = 0; column < presses.getWidth(); column++) {
+                if (presses.isOn(row, column)) {
+                    if (builder.length() > 0) {
+                        builder.append(SEPARATOR);
+                    }
+                    appendCell(builder, row, column);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write out press counts for the coloured variant, in row order. Cells pressed more than once
+     * are repeated, for example "C3, C3".
+     *
+     * @param pressCounts How many times each cell is pressed, indexed by row * width + column
+     * @param width       Number of cells wide the board is
+     * @return String such as "B2, B2, E5". Empty if there are no presses.
+     */
+    public static String format(int[] pressCounts, int width) {
+        StringBuilder builder = new StringBuilder();
+        for (int cell = 0; cell < pressCounts.length; cell++) {
+            for (int press = 0; press < pressCounts[cell]; press++) {
+                if (builder.length() > 0) {
+                    builder.append(SEPARATOR);
+                }
+                appendCell(builder, cell / width, cell % width);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Read a list of presses
+     *
+     * @param moves String such as "B3, E1"
+     * @return int[][] holding the row then column of each press, in order
+     * @throws IllegalArgumentException Where a press cannot be read
+     */
+    public static int[][] parse(String moves) {
+        List<int[]> presses = new ArrayList<>();
+        for (String move : moves.split(",")) {
+            move = move.trim();
+            if (move.isEmpty()) {
+                continue;
+            }
+            int column = 0;
+            int i = 0;
+            while (i < move.length() && Character.isLetter(move.charAt(i))) {
+                column = column * 26 + (Character.toUpperCase(move.charAt(i)) - 'A' + 1);
+                i++;
+            }
+            if (i == 0 || i == move.length()) {
+                throw new IllegalArgumentException("Invalid move: " + move);
+            }
+            int row;
+            try {
+                row = Integer.parseInt(move.substring(i));
+            } catch (NumberFormatException error) {
+                throw new IllegalArgumentException("Invalid move: " + move);
+            }
+            if (row < 1) {
+                throw new IllegalArgumentException("Invalid move: " + move);
+            }
+            presses.add(new int[]{row - 1, column - 1});
+        }
+        return presses.toArray(new int[0][]);
+    }
+}
@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+/**
+ * Board state for the normal variant, where each light is either on or off. Each row is stored as
+ * packed longs, one bit per light, so a press flips the few words listed by the board's
+ * ToggleMasks whatever the size of the board or its topology. The number of lit lights is updated
+ * with a bit count of each changed word, so checking whether the board is solved takes constant
+ * time.
+ */
+public class NormalBoardState extends BoardState {
+    private final ToggleMasks masks;
+    private final int wordsPerRow;
+    /**
+     * Row r occupies words [r * wordsPerRow, (r + 1) * wordsPerRow). Bits beyond the width of the
+     * board are always clear.
+     */
+    private final long[] words;
+    private int litCount = 0;
+    /**
+     * Set when the words may have been changed through getWords, so litCount must be recounted
+     */
+    private boolean litCountStale = false;
+
+    /**
+     * Create a new standard size board with every light off
+     */
+    public NormalBoardState() {
+        this(Board.BOARD_SIZE, Board.BOARD_SIZE);
+    }
+
+    /**
+     * Create a new board of the given size with every light off, using the standard topology
+     *
+     * @param width  Number of lights wide the board is
+     * @param height Number of lights high the board is
+     */
+    public NormalBoardState(int width, int height) {
+        this(width, height, Topology.STANDARD);
+    }
+
+    /**
+     * Create a new board of the given size and topology with every light off
+     *
+     * @param width    Number of lights wide the board is
+     * @param height   Number of lights high the board is
+     * @param topology Rule deciding which lights a press alters
+     */
+    public NormalBoardState(int width, int height, Topology topology) {
+        super(width, height, topology);
+        this.masks = getToggleMasks();
+        this.wordsPerRow = masks.getWordsPerRow();
+        this.words = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Create a standard 5x5 board from a packed int
+     *
+     * @param packed Packed board, as described in PackedBoard
+     * @return A new NormalBoardState holding the given lights
+     */
+    public static NormalBoardState fromPacked(int packed) {
+        NormalBoardState state = new NormalBoardState(PackedBoard.SIZE, PackedBoard.SIZE);
+        state.setPacked(packed);
+        return state;
+    }
+
+    @Override
+    public void press(int row, int column) {
+        int lastTarget = masks.getRowEnd(row);
+        if (wordsPerRow == 1) {
+            // Each target row is a single word, flipped by a single mask
+            for (int target = masks.getRowStart(row); target < lastTarget; target++) {
+                this.flip(masks.getRowBase(target), masks.getMask(masks.getColumnStart(target, column)));
+            }
+            return;
+        }
+        for (int target = masks.getRowStart(row); target < lastTarget; target++) {
+            int base = masks.getRowBase(target);
+            int lastEntry = masks.getColumnEnd(target, column);
+            for (int entry = masks.getColumnStart(target, column); entry < lastEntry; entry++) {
+                long mask = masks.getMask(entry);
+                // Padding entries flip nothing, and most columns of a wide board only have one word
+                if (mask != 0) {
+                    this.flip(base + masks.getWord(entry), mask);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flip the lights of a word within the mask, keeping the lit count up to date
+     */
+    private void flip(int index, long mask) {
+        litCount += Long.bitCount(mask) - 2 * Long.bitCount(words[index] & mask);
+        words[index] ^= mask;
+    }
+
+    @Override
+    public void toggle(int row, int column) {
+        this.flip(row * wordsPerRow + (column >>> 6), 1L << column);
+    }
+
+    @Override
+    public int getCell(int row, int column) {
+        return (int) (words[row * wordsPerRow + (column >>> 6)] >>> column) & 1;
+    }
+
+    @Override
+    public void setCell(int row, int column, int state) {
+        int index = row * wordsPerRow + (column >>> 6);
+        if ((state != 0) != ((words[index] & (1L << column)) != 0)) {
+            this.flip(index, 1L << column);
+        }
+    }
+
+    @Override
+    public boolean isOn(int row, int column) {
+        return getCell(row, column) != 0;
+    }
+
+    @Override
+    public int getLitCount() {
+        if (litCountStale) {
+            litCountStale = false;
+            litCount = 0;
+            for (long word : words) {
+                litCount += Long.bitCount(word);
+            }
+        }
+        return litCount;
+    }
+
+    @Override
+    public NormalBoardState copy() {
+        NormalBoardState copy = new NormalBoardState(getWidth(), getHeight(), getTopology());
+        System.arraycopy(words, 0, copy.words, 0, words.length);
+        copy.litCount = litCount;
+        copy.litCountStale = litCountStale;
+        return copy;
+    }
+
+    /**
+     * Replace every light on this board with those of another board of the same size
+     *
+     * @param other The board to copy from
+     */
+    public void copyFrom(NormalBoardState other) {
+        if (other.getWidth() != getWidth() || other.getHeight() != getHeight()) {
+            throw new IllegalArgumentException("Board sizes do not match");
+        }
+        System.arraycopy(other.words, 0, words, 0, words.length);
+        litCount = other.litCount;
+        litCountStale = other.litCountStale;
+    }
+
+    /**
+     * Turn every light off
+     */
+    public void clear() {
+        Arrays.fill(words, 0);
+        litCount = 0;
+        litCountStale = false;
+    }
+
+    /**
+     * Retrieve the number of words used to store each row
+     *
+     * @return int number of longs per row
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * Retrieve the words backing this board. Row r occupies words
+     * [r * getWordsPerRow(), (r + 1) * getWordsPerRow()), and column c is bit (c % 64) of word
+     * (c / 64) within its row. Changes to the array alter the board, so bits beyond the width of
+     * the board must be kept clear. As the array may be changed, the lit count is recounted the
+     * next time it is needed.
+     *
+     * @return long[] backing this board
+     */
+    public long[] getWords() {
+        litCountStale = true;
+        return words;
+    }
+
+    /**
+     * Retrieve the words backing this board for reading only, laid out as for getWords. Unlike
+     * getWords the lit count is kept, so solvers can read a live board without making the next
+     * isSolved recount it. The array must not be modified.
+     *
+     * @return long[] backing this board
+     */
+    public long[] readWords() {
+        return words;
+    }
+
+    /**
+     * Retrieve the packed representation of a standard 5x5 board
+     *
+     * @return int with a bit set for each lit light, as described in PackedBoard
+     * @throws IllegalStateException Where this board is not 5x5
+     */
+    public int toPacked() {
+        checkPackable();
+        int packed = 0;
+        for (int row = 0; row < PackedBoard.SIZE; row++) {
+            packed |= (int) words[row] << (row * PackedBoard.SIZE);
+        }
+        return packed;
+    }
+
+    /**
+     * Replace every light on a standard 5x5 board at once
+     *
+     * @param packed Packed board, as described in PackedBoard
+     * @throws IllegalStateException Where this board is not 5x5
+     */
+    public void setPacked(int packed) {
+        checkPackable();
+        int rowMask = (1 << PackedBoard.SIZE) - 1;
+        for (int row = 0; row < PackedBoard.SIZE; row++) {
+            words[row] = (packed >>> (row * PackedBoard.SIZE)) & rowMask;
+        }
+        litCount = Integer.bitCount(packed & PackedBoard.FULL_MASK);
+        litCountStale = false;
+    }
+
+    private void checkPackable() {
+        if (getWidth() != PackedBoard.SIZE || getHeight() != PackedBoard.SIZE) {
+            throw new IllegalStateException("Only " + PackedBoard.SIZE + "x" + PackedBoard.SIZE
+                    + " boards can be packed into an int");
+        }
+    }
+}
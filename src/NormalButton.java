@@ -1,7 +1,7 @@
 import java.awt.*;
 
 public class NormalButton extends Button {
-    private static final Color ON_COLOR = Color.green;
+    static final Color ON_COLOR = Color.green;
     private boolean state;
 
     public NormalButton(int row, int column, boolean state) {
@@ -24,10 +24,17 @@ public class NormalButton extends Button {
 
 
     /**
-     * Toggle the state of this button.
+     * Display the given state on this button. Only repaints if the state has changed.
+     *
+     * @param state 1 if the light is on, 0 if it is off
      */
-    public void update() {
-        this.state = !this.state;
+    @Override
+    public void render(int state) {
+        boolean newState = state != 0;
+        if (newState == this.state) {
+            return;
+        }
+        this.state = newState;
         if (this.state) {
             this.setBackground(ON_COLOR);
         } else {
@@ -35,6 +42,11 @@ public class NormalButton extends Button {
         }
     }
 
+    @Override
+    public int getState() {
+        return state ? 1 : 0;
+    }
+
     @Override
     public boolean isOn() {
         return state;
@@ -0,0 +1,228 @@
+/**
+ * Helpers for working with the classic 5x5 board packed into a single int. Bit (row * 5 + column)
+ * is set when the light at that position is lit, so a whole board can be stored, copied and
+ * compared as a primitive. Every press is a single XOR against a precomputed toggle mask.
+ * <p>
+ * This class never touches Swing, so it can be used for simulations and solver sweeps.
+ */
+public final class PackedBoard {
+    /**
+     * The number of lights wide/high a packed board is.
+     */
+    public static final int SIZE = 5;
+    /**
+     * The number of lights on a packed board.
+     */
+    public static final int CELLS = SIZE * SIZE;
+    /**
+     * Mask with every light on the board set.
+     */
+    public static final int FULL_MASK = (1 << CELLS) - 1;
+
+    /**
+     * The lights flipped by pressing each cell - the cell itself and those above, below, left and
+     * right of it.
+     */
+    private static final int[] TOGGLE_MASKS = new int[CELLS];
+
+    /**
+     * The number of rotations and reflections of a square board
+     */
+    public static final int SYMMETRIES = 8;
+    /**
+     * Where each row of a board ends up under each symmetry. SYMMETRY_ROWS[s][row][bits] is the
+     * transformed board holding only the given bits of the given row, so a whole board is
+     * transformed by ORing one entry per row.
+     */
+    private static final int[][][] SYMMETRY_ROWS = new int[SYMMETRIES][SIZE][1 << SIZE];
+
+    static {
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; column++) {
+                int mask = bit(row, column);
+                if (row - 1 >= 0) {
+                    mask |= bit(row - 1, column);
+                }
+                if (row + 1 < SIZE) {
+                    mask |= bit(row + 1, column);
+                }
+                if (column - 1 >= 0) {
+                    mask |= bit(row, column - 1);
+                }
+                if (column + 1 < SIZE) {
+                    mask |= bit(row, column + 1);
+                }
+                TOGGLE_MASKS[index(row, column)] = mask;
+            }
+        }
+
+        int last = SIZE - 1;
+        for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+            for (int row = 0; row < SIZE; row++) {
+                for (int bits = 0; bits < 1 << SIZE; bits++) {
+                    int transformed = 0;
+                    for (int column = 0; column < SIZE; column++) {
+                        if ((bits & (1 << column)) == 0) {
+                            continue;
+                        }
+                        int[][] positions = {
+                                {row, column}, {column, last - row}, {last - row, last - column},
+                                {last - column, row}, {row, last - column}, {last - row, column},
+                                {column, row}, {last - column, last - row}
+                        };
+                        transformed |= bit(positions[symmetry][0], positions[symmetry][1]);
+                    }
+                    SYMMETRY_ROWS[symmetry][row][bits] = transformed;
+                }
+            }
+        }
+    }
+
+    private PackedBoard() {
+    }
+
+    /**
+     * Get the bit index of a position on the board
+     *
+     * @param row    Row position of the light
+     * @param column Column position of the light
+     * @return int from 0 to 24
+     */
+    public static int index(int row, int column) {
+        return row * SIZE + column;
+    }
+
+    /**
+     * Get the single-bit mask for a position on the board
+     *
+     * @param row    Row position of the light
+     * @param column Column position of the light
+     * @return int with only the bit for this position set
+     */
+    public static int bit(int row, int column) {
+        return 1 << index(row, column);
+    }
+
+    /**
+     * Retrieve the lights flipped by pressing the given cell
+     *
+     * @param cell Bit index of the pressed cell
+     * @return int mask of the cell and its neighbours
+     */
+    public static int getToggleMask(int cell) {
+        return TOGGLE_MASKS[cell];
+    }
+
+    /**
+     * Press a cell, flipping it and its neighbours
+     *
+     * @param state The packed board to press
+     * @param cell  Bit index of the pressed cell
+     * @return The packed board after the press
+     */
+    public static int press(int state, int cell) {
+        return state ^ TOGGLE_MASKS[cell];
+    }
+
+    /**
+     * Press a cell, flipping it and its neighbours
+     *
+     * @param state  The packed board to press
+     * @param row    Row position of the pressed cell
+     * @param column Column position of the pressed cell
+     * @return The packed board after the press
+     */
+    public static int press(int state, int row, int column) {
+        return state ^ TOGGLE_MASKS[index(row, column)];
+    }
+
+    /**
+     * Determines whether the light at the given position is lit
+     *
+     * @param state  The packed board
+     * @param row    Row position of the light
+     * @param column Column position of the light
+     * @return boolean indicating if the light is on
+     */
+    public static boolean isLit(int state, int row, int column) {
+        return (state & bit(row, column)) != 0;
+    }
+
+    /**
+     * Rotate and/or reflect a packed board
+     *
+     * @param state    The packed board
+     * @param symmetry Which of the 8 symmetries to apply: 0 is the identity, 1 to 3 are rotations
+     *                 by 90, 180 and 270 degrees, and 4 to 7 are reflections.
+     * @return The transformed packed board
+     */
+    public static int transform(int state, int symmetry) {
+        int[][] rows = SYMMETRY_ROWS[symmetry];
+        int rowMask = (1 << SIZE) - 1;
+        return rows[0][state & rowMask]
+                | rows[1][(state >>> SIZE) & rowMask]
+                | rows[2][(state >>> 2 * SIZE) & rowMask]
+                | rows[3][(state >>> 3 * SIZE) & rowMask]
+                | rows[4][(state >>> 4 * SIZE) & rowMask];
+    }
+
+    /**
+     * Find the canonical form of a packed board - the smallest of its 8 rotations and reflections.
+     * Boards which are rotations or reflections of each other share a canonical form.
+     *
+     * @param state The packed board
+     * @return The canonical packed board
+     */
+    public static int canonical(int state) {
+        int best = state;
+        for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+            best = Math.min(best, transform(state, symmetry));
+        }
+        return best;
+    }
+
+    /**
+     * Find the canonical form of a coloured board held as two packed planes, as returned by
+     * ColoredBoardState.toPacked. Both planes are transformed together.
+     *
+     * @param planes The high plane in bits 25 to 49 and the low plane in bits 0 to 24
+     * @return The smallest of the 8 rotations and reflections, in the same layout
+     */
+    public static long canonicalColoured(long planes) {
+        int low = (int) planes & FULL_MASK;
+        int high = (int) (planes >>> CELLS) & FULL_MASK;
+        long best = planes;
+        for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+            long transformed = (long) transform(high, symmetry) << CELLS | transform(low, symmetry);
+            best = Math.min(best, transformed);
+        }
+        return best;
+    }
+
+    /**
+     * Find the key used to spot levels which are rotations or reflections of each other. Normal
+     * and coloured boards use separate key spaces, so should be kept in separate sets.
+     *
+     * @param state A normal or coloured board
+     * @return long canonical packed board, or -1 if the board is not 5x5
+     */
+    public static long canonicalKey(BoardState state) {
+        if (state.getWidth() != SIZE || state.getHeight() != SIZE) {
+            return -1;
+        }
+        if (state instanceof ColoredBoardState) {
+            return canonicalColoured(((ColoredBoardState) state).toPacked());
+        }
+        return canonical(((NormalBoardState) state).toPacked());
+    }
+
+    /**
+     * Determines whether a packed board is solved - all lights are out.
+     *
+     * @param state The packed board
+     * @return boolean indicating if no lights are lit
+     */
+    public static boolean isSolved(int state) {
+        return state == 0;
+    }
+}
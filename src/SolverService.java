@@ -0,0 +1,464 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves boards over HTTP, so other tools can check levels without their own solver.
+ * <p>
+ * POST one or more boards to /solve, written as in the level files and separated by blank lines.
+ * Add ?variant=coloured for coloured boards. The reply is JSON with one result per board, in order:
+ * {"results":[{"solvable":true,"moves":2,"minimal":true,"solution":"B3, E1"},{"solvable":false},
+ * {"error":"..."}]}. Solutions are written in the notation of levelSolutions.txt. They are minimal
+ * unless the board has more quiet patterns than the solver searches, or is too wide for
+ * LightsOutSolver and so solved by LargeBoardSolver; "minimal" is false for those.
+ * <p>
+ * Results are kept in a cache keyed by the packed board, so repeated boards are answered without
+ * solving them again. The cache is bounded by the memory its boards and results take, and results
+ * too large to be worth keeping, such as those of very large boards, are not cached. Large batches
+ * are split between a pool of workers, each thread keeping its own parser and solvers between
+ * requests. Requests are rejected before any board is solved if their boards have too many cells
+ * or sizes in total.
+ * <p>
+ * Start the service from the command line with:
+ * java -cp ./src SolverService [port]
+ */
+public class SolverService {
+    /**
+     * Port listened on when none is given
+     */
+    public static final int DEFAULT_PORT = 5226;
+    /**
+     * Most memory held by the cache, in bytes, counting each board and its result
+     */
+    public static final long CACHE_BYTES = 64L << 20;
+    /**
+     * Largest board and result which is cached, in bytes, so that one huge board cannot push every
+     * other result out of the cache
+     */
+    private static final long MAX_CACHED_BYTES = CACHE_BYTES >> 10;
+    /**
+     * Largest request accepted, in bytes
+     */
+    private static final int MAX_REQUEST = 16 << 20;
+    /**
+     * Most cells accepted across every board of a request
+     */
+    public static final int MAX_REQUEST_CELLS = 1 << 22;
+    /**
+     * Most different board sizes accepted in a request. The first board of each size builds a
+     * solver for it, which for tall boards takes far longer than solving the board.
+     */
+    public static final int MAX_REQUEST_SIZES = 16;
+    /**
+     * Most green cells accepted across every coloured board of a request. Each green cell can
+     * double the time taken to solve its board, so they are limited per board by
+     * ColoredSolver.MAX_GREENS and per request by this.
+     */
+    public static final int MAX_REQUEST_GREENS = 10_000;
+    /**
+     * Fewest boards given to each worker, so small batches are not split needlessly
+     */
+    private static final int MIN_CHUNK = 16;
+
+    private final HttpServer server;
+    private final LargeBoardSolver largeSolver = new LargeBoardSolver();
+    private final ExecutorService workers;
+    private final int workerCount;
+    /**
+     * Parser and solvers of each worker thread, kept between requests
+     */
+    private final ThreadLocal<Worker> workerState = ThreadLocal.withInitial(Worker::new);
+    /**
+     * JSON result of each recently solved board, least recently used first
+     */
+    private final Map<Level, String> cache = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Memory held by the cache, as estimated by cacheBytes
+     */
+    private long cachedBytes = 0;
+
+    /**
+     * Listen for requests on the local machine
+     *
+     * @param port Port to listen on, or 0 to pick any free port
+     * @throws IOException Where the port cannot be listened on
+     */
+    public SolverService(int port) throws IOException {
+        workerCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread thread = new Thread(task, "Solver worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/solve", this::handle);
+        // Requests only split up and join batches; the solving is done by the workers
+        server.setExecutor(Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "Solver request");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Start answering requests in the background
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop answering requests
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdown();
+    }
+
+    /**
+     * Retrieve the port being listened on
+     *
+     * @return int port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                this.reply(exchange, 405, "{\"error\":\"Boards must be sent with POST\"}");
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            boolean coloured = query != null && query.contains("variant=coloured");
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                this.reply(exchange, 413, "{\"error\":\"Request is larger than " + MAX_REQUEST + " bytes\"}");
+                return;
+            }
+            try {
+                this.reply(exchange, 200, this.solveAll(body, coloured));
+            } catch (IllegalArgumentException error) {
+                this.reply(exchange, 413, "{\"error\":" + quote(error.getMessage()) + "}");
+            } catch (InterruptedException | ExecutionException error) {
+                this.reply(exchange, 500, "{\"error\":" + quote(String.valueOf(error.getMessage())) + "}");
+            }
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_REQUEST) {
+                return null;
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private void reply(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Solve every board in a request, splitting them between the workers
+     *
+     * @param body     Boards written as in the level files, separated by blank lines
+     * @param coloured Whether the boards are coloured
+     * @return String JSON holding the result of each board
+     * @throws IllegalArgumentException Where the request has more than MAX_REQUEST_CELLS cells,
+     *                                  MAX_REQUEST_SIZES sizes of board or, if coloured,
+     *                                  MAX_REQUEST_GREENS green cells
+     * @throws InterruptedException     Where interrupted while waiting for the workers
+     * @throws ExecutionException       Where a worker fails unexpectedly
+     */
+    String solveAll(byte[] body, boolean coloured) throws InterruptedException, ExecutionException {
+        int[] bounds = splitBoards(body);
+        int boards = bounds.length / 2;
+        checkCost(body, bounds, coloured);
+        String[] results = new String[boards];
+        int chunk = Math.max(MIN_CHUNK, (boards + workerCount - 1) / workerCount);
+        List<Future<?>> pending = new ArrayList<>();
+        for (int first = 0; first < boards; first += chunk) {
+            int start = first;
+            int end = Math.min(boards, first + chunk);
+            pending.add(workers.submit(() -> workerState.get().solve(body, bounds, start, end, coloured, results)));
+        }
+        for (Future<?> future : pending) {
+            future.get();
+        }
+
+        StringBuilder json = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < boards; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(results[i]);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Find where each board starts and ends. Boards are separated by lines holding only whitespace.
+     *
+     * @return int[] holding the start and end offset of each board
+     */
+    private static int[] splitBoards(byte[] body) {
+        int[] bounds = new int[16];
+        int count = 0;
+        int boardStart = -1;
+        int lineStart = 0;
+        boolean blank = true;
+        for (int i = 0; i <= body.length; i++) {
+            if (i == body.length || body[i] == '\n') {
+                if (!blank && boardStart < 0) {
+                    boardStart = lineStart;
+                }
+                if ((blank || i == body.length) && boardStart >= 0) {
+                    if (count + 2 > bounds.length) {
+                        bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                    }
+                    bounds[count++] = boardStart;
+                    bounds[count++] = i;
+                    boardStart = -1;
+                }
+                lineStart = i + 1;
+                blank = true;
+            } else if (body[i] != ' ' && body[i] != '\r' && body[i] != '\t') {
+                blank = false;
+            }
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Reject a request which would take too long to solve. The boards are scanned without parsing
+     * them: cells are counted on lines holding commas, which leaves out the size and time limit
+     * lines, and a cell written as 0 is green.
+     *
+     * @throws IllegalArgumentException Where the request is over one of its limits
+     */
+    private static void checkCost(byte[] body, int[] bounds, boolean coloured) {
+        long cells = 0;
+        long greens = 0;
+        Set<Long> sizes = new HashSet<>();
+        for (int board = 0; board < bounds.length / 2; board++) {
+            int width = 0;
+            int height = 0;
+            int lineCells = 0;
+            int lineGreens = 0;
+            boolean lineHasComma = false;
+            // 0 before a cell's first character, 1 after a lone 0, 2 after anything else
+            int cell = 0;
+            int end = bounds[board * 2 + 1];
+            for (int i = bounds[board * 2]; i <= end; i++) {
+                byte character = i == end ? (byte) '\n' : body[i];
+                if (character == ',' || character == '\n') {
+                    lineCells++;
+                    if (cell == 1) {
+                        lineGreens++;
+                    }
+                    cell = 0;
+                    if (character == ',') {
+                        lineHasComma = true;
+                        continue;
+                    }
+                    if (lineHasComma) {
+                        width = height == 0 ? lineCells : width;
+                        height++;
+                        cells += lineCells;
+                        greens += lineGreens;
+                    }
+                    lineCells = 0;
+                    lineGreens = 0;
+                    lineHasComma = false;
+                } else if (character != ' ' && character != '\r' && character != '\t') {
+                    cell = cell == 0 && character == '0' ? 1 : 2;
+                }
+            }
+            sizes.add((long) width << 32 | height);
+        }
+        if (cells > MAX_REQUEST_CELLS) {
+            throw new IllegalArgumentException("Requests may hold at most " + MAX_REQUEST_CELLS + " cells");
+        }
+        if (sizes.size() > MAX_REQUEST_SIZES) {
+            throw new IllegalArgumentException("Requests may hold at most " + MAX_REQUEST_SIZES + " sizes of board");
+        }
+        if (coloured && greens > MAX_REQUEST_GREENS) {
+            throw new IllegalArgumentException("Requests may hold at most " + MAX_REQUEST_GREENS + " green cells");
+        }
+    }
+
+    /**
+     * Solves runs of boards on one thread, reusing its parser and a solver per board size. Solvers
+     * for at most MAX_REQUEST_SIZES sizes of each variant are kept.
+     */
+    private final class Worker {
+        private final LevelParser parser = new LevelParser();
+        private final Map<Long, LightsOutSolver> normalSolvers = new HashMap<>();
+        private final Map<Long, ColoredSolver> colouredSolvers = new HashMap<>();
+
+        private void solve(byte[] body, int[] bounds, int first, int end, boolean coloured, String[] results) {
+            for (int board = first; board < end; board++) {
+                int start = bounds[board * 2];
+                try {
+                    parser.parse(body, start, bounds[board * 2 + 1] - start, coloured, "board " + (board + 1));
+                } catch (InvalidLevelException error) {
+                    results[board] = "{\"error\":" + quote(error.getMessage()) + "}";
+                    continue;
+                }
+                BoardState state = parser.toBoardState(coloured);
+                // The time limit does not change the solution, so is left out of the key
+                Level key = new Level(state, 0);
+                String result;
+                synchronized (cache) {
+                    result = cache.get(key);
+                }
+                if (result == null) {
+                    result = this.solve(state);
+                    cacheResult(key, result);
+                }
+                results[board] = result;
+            }
+        }
+
+        private String solve(BoardState state) {
+            int width = state.getWidth();
+            int height = state.getHeight();
+            long size = (long) width << 32 | height;
+            try {
+                if (state instanceof ColoredBoardState) {
+                    if (colouredSolvers.size() >= MAX_REQUEST_SIZES && !colouredSolvers.containsKey(size)) {
+                        colouredSolvers.clear();
+                    }
+                    ColoredSolver solver = colouredSolvers.computeIfAbsent(size, key -> new ColoredSolver(width, height));
+                    int[] pressCounts = new int[width * height];
+                    int moves = solver.solve((ColoredBoardState) state, pressCounts);
+                    if (moves < 0) {
+                        return "{\"solvable\":false}";
+                    }
+                    return solved(moves, solver.getNullity() <= ColoredSolver.MAX_MINIMISE_NULLITY,
+                            MoveNotation.format(pressCounts, width));
+                }
+                if (width > LightsOutSolver.MAX_WIDTH) {
+                    NormalBoardState solution = largeSolver.solve((NormalBoardState) state);
+                    if (solution == null) {
+                        return "{\"solvable\":false}";
+                    }
+                    return solved(solution.getLitCount(), false, MoveNotation.format(solution));
+                }
+                if (normalSolvers.size() >= MAX_REQUEST_SIZES && !normalSolvers.containsKey(size)) {
+                    normalSolvers.clear();
+                }
+                LightsOutSolver solver = normalSolvers.computeIfAbsent(size, key -> new LightsOutSolver(width, height));
+                NormalBoardState solution = new NormalBoardState(width, height);
+                if (!solver.solve((NormalBoardState) state, solution)) {
+                    return "{\"solvable\":false}";
+                }
+                return solved(solution.getLitCount(), solver.getNullity() <= LightsOutSolver.MAX_MINIMISE_NULLITY,
+                        MoveNotation.format(solution));
+            } catch (IllegalArgumentException error) {
+                // Boards the solvers do not support
+                return "{\"error\":" + quote(error.getMessage()) + "}";
+            }
+        }
+    }
+
+    /**
+     * Keep the result of a board, dropping the least recently used results while the cache holds
+     * more than CACHE_BYTES
+     */
+    private void cacheResult(Level key, String result) {
+        long bytes = cacheBytes(key, result);
+        if (bytes > MAX_CACHED_BYTES) {
+            return;
+        }
+        synchronized (cache) {
+            String previous = cache.put(key, result);
+            cachedBytes += bytes;
+            if (previous != null) {
+                cachedBytes -= cacheBytes(key, previous);
+            }
+            Iterator<Map.Entry<Level, String>> eldest = cache.entrySet().iterator();
+            while (cachedBytes > CACHE_BYTES) {
+                Map.Entry<Level, String> entry = eldest.next();
+                cachedBytes -= cacheBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Estimate the memory taken by a cached result: the map entry and level objects, the packed
+     * lights, and the result, which is ASCII so takes a byte per character
+     */
+    private static long cacheBytes(Level key, String result) {
+        return 128 + Level.wordsFor(key.getWidth(), key.getHeight(), key.isColoured()) * (long) Long.BYTES
+                + result.length();
+    }
+
+    private static String solved(int moves, boolean minimal, String solution) {
+        return "{\"solvable\":true,\"moves\":" + moves + ",\"minimal\":" + minimal
+                + ",\"solution\":" + quote(solution) + "}";
+    }
+
+    /**
+     * Write a string as a JSON string literal
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char character = text.charAt(i);
+            if (character == '"' || character == '\\') {
+                quoted.append('\\').append(character);
+            } else if (character < ' ') {
+                quoted.append(String.format("\\u%04x", (int) character));
+            } else {
+                quoted.append(character);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Start the service
+     *
+     * @param args Optionally the port to listen on
+     * @throws IOException Where the service cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        SolverService service = new SolverService(port);
+        service.start();
+        System.out.println("Solving boards at http://localhost:" + service.getPort() + "/solve");
+    }
+}
@@ -0,0 +1,340 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A topology compiled for one size of board, holding the words and masks flipped by pressing each
+ * cell of a board stored as packed longs. Column c of a row lives in word (c / 64) at bit (c % 64).
+ * <p>
+ * A press alters a few rows, and within each row the same columns relative to the pressed one.
+ * Each row therefore lists the rows its presses reach along with a 'pattern' - the set of column
+ * offsets applied there - and each pattern holds, for every column, the words of a row it flips
+ * and the mask flipped in each. Every row lists the same number of target rows and every column
+ * the same number of entries, padded with empty masks which flip nothing, so pressing a cell is a
+ * walk over two fixed length precomputed lists with no bounds checks, whatever the topology. The
+ * masks take space in proportion to the width and height of the board rather than its area.
+ * <p>
+ * Masks are shared between every board of the same size and topology.
+ *
+ * @see Topology#compile
+ */
+public final class ToggleMasks {
+    private final Topology topology;
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long lastWordMask;
+    /**
+     * Number of target rows listed for each row, including padding
+     */
+    private final int targetsPerRow;
+    /**
+     * Number of entries listed for each column of a pattern, including padding
+     */
+    private final int entriesPerColumn;
+    /**
+     * Index of the first word of each target row. Presses on row r reach the target rows
+     * [r * targetsPerRow, (r + 1) * targetsPerRow).
+     */
+    private final int[] rowBases;
+    /**
+     * Where the pattern applied to each target row starts, as pattern * width * entriesPerColumn
+     */
+    private final int[] rowPatterns;
+    /**
+     * Word within the row flipped by each entry
+     */
+    private final int[] columnWords;
+    /**
+     * Bits flipped by each entry. Column c of the pattern starting at p flips the entries
+     * [p + c * entriesPerColumn, p + (c + 1) * entriesPerColumn).
+     */
+    private final long[] columnMasks;
+    private final int maxToggled;
+
+    /**
+     * Compile a topology for one size of board. Use Topology.compile, which shares the result.
+     */
+    ToggleMasks(Topology topology, int width, int height) {
+        this.topology = topology;
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = wordsFor(width);
+        this.lastWordMask = lastWordMask(width);
+
+        // Group the offsets by the row they reach, naming each distinct set of column offsets
+        Map<List<Integer>, Integer> patterns = new LinkedHashMap<>();
+        List<Map<Integer, Integer>> reachedRows = new ArrayList<>();
+        int mostTargets = 1;
+        for (int row = 0; row < height; row++) {
+            Map<Integer, List<Integer>> reached = new LinkedHashMap<>();
+            for (int i = 0; i < topology.getOffsetCount(); i++) {
+                int target = this.wrap(row + topology.getRowOffset(i), height);
+                if (target >= 0) {
+                    reached.computeIfAbsent(target, key -> new ArrayList<>()).add(topology.getColumnOffset(i));
+                }
+            }
+            Map<Integer, Integer> targets = new LinkedHashMap<>();
+            for (Map.Entry<Integer, List<Integer>> entry : reached.entrySet()) {
+                targets.put(entry.getKey(), patterns.computeIfAbsent(entry.getValue(), key -> patterns.size()));
+            }
+            reachedRows.add(targets);
+            mostTargets = Math.max(mostTargets, targets.size());
+        }
+        // Rows reaching fewer targets are padded with an empty pattern
+        int empty = patterns.computeIfAbsent(Collections.emptyList(), key -> patterns.size());
+
+        // The words and masks flipped by each pattern at each column, merging offsets landing in one word
+        int slots = Math.min(wordsPerRow, topology.getOffsetCount());
+        List<int[]> patternWords = new ArrayList<>();
+        List<long[]> patternMasks = new ArrayList<>();
+        int mostEntries = 1;
+        for (List<Integer> offsets : patterns.keySet()) {
+            int[] words = new int[width * slots];
+            long[] masks = new long[width * slots];
+            for (int column = 0; column < width; column++) {
+                int first = column * slots;
+                int entries = first;
+                for (int offset : offsets) {
+                    int target = this.wrap(column + offset, width);
+                    if (target < 0) {
+                        continue;
+                    }
+                    int word = target >>> 6;
+                    int entry = first;
+                    while (entry < entries && words[entry] != word) {
+                        entry++;
+                    }
+                    if (entry == entries) {
+                        words[entries++] = word;
+                    }
+                    masks[entry] |= 1L << target;
+                }
+                mostEntries = Math.max(mostEntries, entries - first);
+            }
+            patternWords.add(words);
+            patternMasks.add(masks);
+        }
+        this.targetsPerRow = mostTargets;
+        this.entriesPerColumn = mostEntries;
+
+        rowBases = new int[height * targetsPerRow];
+        rowPatterns = new int[height * targetsPerRow];
+        Arrays.fill(rowPatterns, empty * width * entriesPerColumn);
+        for (int row = 0; row < height; row++) {
+            int target = row * targetsPerRow;
+            for (Map.Entry<Integer, Integer> entry : reachedRows.get(row).entrySet()) {
+                rowBases[target] = entry.getKey() * wordsPerRow;
+                rowPatterns[target++] = entry.getValue() * width * entriesPerColumn;
+            }
+        }
+        columnWords = new int[patterns.size() * width * entriesPerColumn];
+        columnMasks = new long[columnWords.length];
+        for (int pattern = 0; pattern < patterns.size(); pattern++) {
+            for (int column = 0; column < width; column++) {
+                int entry = (pattern * width + column) * entriesPerColumn;
+                System.arraycopy(patternWords.get(pattern), column * slots, columnWords, entry, entriesPerColumn);
+                System.arraycopy(patternMasks.get(pattern), column * slots, columnMasks, entry, entriesPerColumn);
+            }
+        }
+
+        int most = 0;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int toggled = 0;
+                for (int target = this.getRowStart(row); target < this.getRowEnd(row); target++) {
+                    for (int entry = this.getColumnStart(target, column); entry < this.getColumnEnd(target, column); entry++) {
+                        toggled += Long.bitCount(columnMasks[entry]);
+                    }
+                }
+                most = Math.max(most, toggled);
+            }
+        }
+        this.maxToggled = most;
+    }
+
+    /**
+     * Apply the edge rule to a row or column reached by an offset
+     *
+     * @return int position on the board, or -1 where it is off the board
+     */
+    private int wrap(int position, int size) {
+        if (topology.wraps()) {
+            return Math.floorMod(position, size);
+        }
+        return position >= 0 && position < size ? position : -1;
+    }
+
+    /**
+     * Calculate how many longs are needed to store a row of the given width
+     *
+     * @param width Number of columns in the row
+     * @return int number of 64 bit words
+     */
+    public static int wordsFor(int width) {
+        return (width + 63) >>> 6;
+    }
+
+    /**
+     * Calculate the mask of bits within the final word of a row that represent real columns
+     *
+     * @param width Number of columns in the row
+     * @return long with a bit set for every used column in the last word
+     */
+    public static long lastWordMask(int width) {
+        int remainder = width & 63;
+        return remainder == 0 ? -1L : (1L << remainder) - 1;
+    }
+
+    /**
+     * Retrieve the first target row reached by a press on the given row. Target rows are numbered
+     * across the whole board, and only have meaning to the methods of these masks.
+     *
+     * @param row Row of the pressed cell
+     * @return int first target row
+     */
+    public int getRowStart(int row) {
+        return row * targetsPerRow;
+    }
+
+    /**
+     * Retrieve the end of the target rows reached by a press on the given row
+     *
+     * @param row Row of the pressed cell
+     * @return int one past the last target row
+     */
+    public int getRowEnd(int row) {
+        return (row + 1) * targetsPerRow;
+    }
+
+    /**
+     * Retrieve the index of the first word of a target row within the packed board
+     *
+     * @param target Target row, from getRowStart to getRowEnd
+     * @return int index of the row's first word
+     */
+    public int getRowBase(int target) {
+        return rowBases[target];
+    }
+
+    /**
+     * Retrieve the first entry flipped within a target row by a press on the given column
+     *
+     * @param target Target row, from getRowStart to getRowEnd
+     * @param column Column of the pressed cell
+     * @return int first entry, for getWord and getMask
+     */
+    public int getColumnStart(int target, int column) {
+        return rowPatterns[target] + column * entriesPerColumn;
+    }
+
+    /**
+     * Retrieve the end of the entries flipped within a target row by a press on the given column
+     *
+     * @param target Target row, from getRowStart to getRowEnd
+     * @param column Column of the pressed cell
+     * @return int one past the last entry
+     */
+    public int getColumnEnd(int target, int column) {
+        return rowPatterns[target] + (column + 1) * entriesPerColumn;
+    }
+
+    /**
+     * Retrieve the word within a row flipped by an entry
+     *
+     * @param entry Entry, from getColumnStart to getColumnEnd
+     * @return int index of the word within the row
+     */
+    public int getWord(int entry) {
+        return columnWords[entry];
+    }
+
+    /**
+     * Retrieve the bits flipped by an entry
+     *
+     * @param entry Entry, from getColumnStart to getColumnEnd
+     * @return long mask within the entry's word
+     */
+    public long getMask(int entry) {
+        return columnMasks[entry];
+    }
+
+    /**
+     * List the cells altered by pressing a cell, in a fixed order
+     *
+     * @param row    Row of the pressed cell
+     * @param column Column of the pressed cell
+     * @param cells  Filled with the index (row * width + column) of each altered cell. Must have
+     *               room for getMaxToggled entries.
+     * @return int number of cells altered
+     */
+    public int getToggledCells(int row, int column, int[] cells) {
+        int count = 0;
+        for (int target = this.getRowStart(row); target < this.getRowEnd(row); target++) {
+            int base = rowBases[target] / wordsPerRow * width;
+            for (int entry = this.getColumnStart(target, column); entry < this.getColumnEnd(target, column); entry++) {
+                for (long bits = columnMasks[entry]; bits != 0; bits &= bits - 1) {
+                    cells[count++] = base + columnWords[entry] * 64 + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retrieve the most cells altered by any one press
+     *
+     * @return int size needed for the array passed to getToggledCells
+     */
+    public int getMaxToggled() {
+        return maxToggled;
+    }
+
+    /**
+     * Retrieve the topology these masks were compiled from
+     *
+     * @return Topology of the masks
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * Retrieve the mask of bits within the final word of a row that represent real columns
+     *
+     * @return long with a bit set for every used column in the last word
+     */
+    public long getLastWordMask() {
+        return lastWordMask;
+    }
+
+    /**
+     * Retrieve the width these masks were built for
+     *
+     * @return int number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Retrieve the height these masks were built for
+     *
+     * @return int number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Retrieve the number of words in each row
+     *
+     * @return int number of longs per row
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+}
@@ -0,0 +1,266 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The rule deciding which cells a press alters. A topology is a stencil of row and column offsets
+ * from the pressed cell, and whether the stencil wraps around the edges of the board as on a
+ * torus or stops at them. The standard rule is the cell itself and its four orthogonal
+ * neighbours.
+ * <p>
+ * Each topology is compiled once per board size into ToggleMasks, which hold the words and masks
+ * flipped by pressing each cell, so a press costs the same whatever the rule. Board states, the
+ * solvers and the board editor all follow the topology of the board they are given.
+ *
+ * @see ToggleMasks
+ */
+public final class Topology {
+    /**
+     * The most offsets a stencil may have, so the cells altered by one press fit in an int mask
+     */
+    public static final int MAX_OFFSETS = 32;
+    /**
+     * The most board sizes whose compiled masks, or whose solver data, are cached at once
+     */
+    public static final int MAX_CACHED_SIZES = 32;
+
+    /**
+     * The cell and its four orthogonal neighbours, stopping at the edges
+     */
+    public static final Topology STANDARD = new Topology("Standard", false,
+            new int[][]{{0, 0}, {-1, 0}, {1, 0}, {0, -1}, {0, 1}});
+    /**
+     * The standard stencil, with the edges of the board joined as on a torus
+     */
+    public static final Topology TOROIDAL = new Topology("Wrap-around", true,
+            new int[][]{{0, 0}, {-1, 0}, {1, 0}, {0, -1}, {0, 1}});
+    /**
+     * The cell and all eight cells around it, including diagonals
+     */
+    public static final Topology EIGHT_NEIGHBOUR = new Topology("Eight neighbours", false,
+            new int[][]{{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 0}, {0, 1}, {1, -1}, {1, 0}, {1, 1}});
+    /**
+     * The cell and every cell a chess knight's move away from it
+     */
+    public static final Topology KNIGHT = new Topology("Knight moves", false,
+            new int[][]{{0, 0}, {-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}});
+
+    private static final Topology[] BUILT_IN = {STANDARD, TOROIDAL, EIGHT_NEIGHBOUR, KNIGHT};
+
+    private final String name;
+    private final boolean wraps;
+    private final int[] rowOffsets;
+    private final int[] columnOffsets;
+    /**
+     * Masks already compiled, keyed by width then height. Holds at most MAX_CACHED_SIZES sizes.
+     */
+    private final ConcurrentHashMap<Long, ToggleMasks> compiled = new ConcurrentHashMap<>();
+
+    private Topology(String name, boolean wraps, int[][] offsets) {
+        if (offsets.length < 1 || offsets.length > MAX_OFFSETS) {
+            throw new IllegalArgumentException("A topology must have between 1 and " + MAX_OFFSETS + " offsets");
+        }
+        this.name = name;
+        this.wraps = wraps;
+        // Sorted so equal stencils compare equal whatever order they were given in
+        long[] sorted = new long[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i].length != 2) {
+                throw new IllegalArgumentException("Each offset must be a row and column pair");
+            }
+            sorted[i] = (long) offsets[i][0] << 32 | (offsets[i][1] & 0xffffffffL);
+        }
+        Arrays.sort(sorted);
+        this.rowOffsets = new int[offsets.length];
+        this.columnOffsets = new int[offsets.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("Offset " + (int) (sorted[i] >> 32) + "," + (int) sorted[i]
+                        + " is repeated");
+            }
+            rowOffsets[i] = (int) (sorted[i] >> 32);
+            columnOffsets[i] = (int) sorted[i];
+        }
+    }
+
+    /**
+     * Create a topology from a custom stencil, for variants designers ask for
+     *
+     * @param name    Name shown to players
+     * @param offsets Row and column offset of each cell a press alters, relative to the pressed
+     *                cell. Include {0, 0} for the pressed cell to change itself.
+     * @param wraps   Whether offsets past an edge continue from the opposite edge
+     * @return Topology using the stencil
+     * @throws IllegalArgumentException Where there are no offsets, more than MAX_OFFSETS, or a
+     *                                  repeated one
+     */
+    public static Topology custom(String name, int[][] offsets, boolean wraps) {
+        return new Topology(name, wraps, offsets);
+    }
+
+    /**
+     * Retrieve every built-in topology, starting with the standard one
+     *
+     * @return Topology[] which may be freely modified
+     */
+    public static Topology[] values() {
+        return BUILT_IN.clone();
+    }
+
+    /**
+     * Find a built-in topology by its name, ignoring case
+     *
+     * @param name Name of the topology, as returned by getName
+     * @return Topology with that name
+     * @throws IllegalArgumentException Where no built-in topology has the name
+     */
+    public static Topology forName(String name) {
+        for (Topology topology : BUILT_IN) {
+            if (topology.name.equalsIgnoreCase(name)) {
+                return topology;
+            }
+        }
+        throw new IllegalArgumentException("Unknown topology: " + name);
+    }
+
+    /**
+     * Retrieve the masks which apply this topology to boards of the given size. Masks are compiled
+     * on first use and shared between every board of the same size, for up to MAX_CACHED_SIZES
+     * sizes at a time.
+     *
+     * @param width  Number of cells wide the board is
+     * @param height Number of cells high the board is
+     * @return ToggleMasks for this topology and size
+     */
+    public ToggleMasks compile(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid board size: " + width + "x" + height);
+        }
+        long size = (long) width << 32 | height;
+        limitCache(compiled, size);
+        return compiled.computeIfAbsent(size, key -> new ToggleMasks(this, width, height));
+    }
+
+    /**
+     * Empty a cache of per-size data before adding a new size once it holds MAX_CACHED_SIZES
+     * entries, so that serving many sizes of board does not hold on to the data for each of them.
+     * Boards and solvers keep what they were given, so only sizes used again afterwards are rebuilt.
+     *
+     * @param cache The cache to limit
+     * @param key   The key about to be looked up
+     */
+    static void limitCache(Map<?, ?> cache, Object key) {
+        if (cache.size() >= MAX_CACHED_SIZES && !cache.containsKey(key)) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Retrieve the name of this topology
+     *
+     * @return String name shown to players
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Determines whether presses wrap around the edges of the board
+     *
+     * @return boolean indicating if the board is treated as a torus
+     */
+    public boolean wraps() {
+        return wraps;
+    }
+
+    /**
+     * Retrieve the number of offsets in the stencil
+     *
+     * @return int number of cells a press alters away from the edges
+     */
+    public int getOffsetCount() {
+        return rowOffsets.length;
+    }
+
+    /**
+     * Retrieve the row offset of one cell of the stencil
+     *
+     * @param index Which offset, from 0 to getOffsetCount() - 1
+     * @return int rows below the pressed cell, negative for above
+     */
+    public int getRowOffset(int index) {
+        return rowOffsets[index];
+    }
+
+    /**
+     * Retrieve the column offset of one cell of the stencil
+     *
+     * @param index Which offset, from 0 to getOffsetCount() - 1
+     * @return int columns right of the pressed cell, negative for left
+     */
+    public int getColumnOffset(int index) {
+        return columnOffsets[index];
+    }
+
+    /**
+     * Determines whether this is the standard rule, which the chasing solvers and the 5x5 packed
+     * boards are built around
+     *
+     * @return boolean indicating if this topology equals STANDARD
+     */
+    public boolean isStandard() {
+        return this.equals(STANDARD);
+    }
+
+    /**
+     * Determines whether a cell alters every cell which alters it. For symmetric topologies a board
+     * is solvable exactly when it has an even number of lights in common with every quiet pattern.
+     *
+     * @return boolean indicating if the stencil equals its own reflection through the centre
+     */
+    public boolean isSymmetric() {
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < rowOffsets.length; i++) {
+            offsets.add((long) rowOffsets[i] << 32 | (columnOffsets[i] & 0xffffffffL));
+        }
+        for (int i = 0; i < rowOffsets.length; i++) {
+            if (!offsets.contains((long) -rowOffsets[i] << 32 | (-columnOffsets[i] & 0xffffffffL))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Topologies are equal when they have the same stencil and edge rule, whatever their names
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Topology)) {
+            return false;
+        }
+        Topology topology = (Topology) other;
+        return wraps == topology.wraps && Arrays.equals(rowOffsets, topology.rowOffsets)
+                && Arrays.equals(columnOffsets, topology.columnOffsets);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Boolean.hashCode(wraps) + Arrays.hashCode(rowOffsets)) + Arrays.hashCode(columnOffsets);
+    }
+
+    /**
+     * Retrieve the name of this topology, so it can be shown directly in a JComboBox
+     *
+     * @return String name of the topology
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,89 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.util.function.Supplier;
+
+/**
+ * Undo and Redo buttons for a board, which can also be used with Ctrl+Z and Ctrl+Y (or
+ * Ctrl+Shift+Z). The buttons are only enabled while there is something to undo or redo; call
+ * update after the board changes.
+ *
+ * @see Board#undo
+ */
+public class UndoControls extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private final Supplier<Board> board;
+    private final JButton undoButton;
+    private final JButton redoButton;
+
+    /**
+     * Create the buttons
+     *
+     * @param board Retrieves the board to undo moves on, which may be replaced as levels change
+     */
+    public UndoControls(Supplier<Board> board) {
+        super(new FlowLayout(FlowLayout.CENTER));
+        this.board = board;
+        this.setOpaque(false);
+
+        undoButton = new JButton("Undo");
+        undoButton.addActionListener(e -> this.undo());
+        redoButton = new JButton("Redo");
+        redoButton.addActionListener(e -> this.redo());
+        this.add(undoButton);
+        this.add(redoButton);
+        this.update();
+    }
+
+    /**
+     * Also undo and redo with the keyboard while the window holding the given component is focused
+     *
+     * @param component Component to bind the keys to
+     */
+    public void bindKeys(JComponent component) {
+        InputMap keys = component.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "redo");
+        component.getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                UndoControls.this.undo();
+            }
+        });
+        component.getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                UndoControls.this.redo();
+            }
+        });
+    }
+
+    private void undo() {
+        Board current = board.get();
+        if (current != null) {
+            current.undo();
+        }
+        this.update();
+    }
+
+    private void redo() {
+        Board current = board.get();
+        if (current != null) {
+            current.redo();
+        }
+        this.update();
+    }
+
+    /**
+     * Enable each button only where there is a move for it to undo or redo
+     */
+    public void update() {
+        Board current = board.get();
+        undoButton.setEnabled(current != null && current.canUndo());
+        redoButton.setEnabled(current != null && current.canRedo());
+    }
+}
@@ -0,0 +1,52 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Lane operations for BitSlicedBoards using the incubating Vector API, processing as many words
+ * per instruction as the CPU allows. Kept apart from the other classes as it needs the
+ * jdk.incubator.vector module. Compile and run with:
+ * javac --add-modules jdk.incubator.vector -cp ./src -d ./src ./src/vector/VectorLaneKernel.java
+ * java --add-modules jdk.incubator.vector -cp ./src BitSlicedBoards
+ * BitSlicedBoards uses it automatically where it has been compiled and the module is present.
+ */
+public class VectorLaneKernel implements BitSlicedBoards.LaneKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public void invert(long[] target, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, target, i).not().intoArray(target, i);
+        }
+        for (; i < length; i++) {
+            target[i] = ~target[i];
+        }
+    }
+
+    @Override
+    public void xor(long[] target, long[] source, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, target, i).lanewise(VectorOperators.XOR,
+                    LongVector.fromArray(SPECIES, source, i)).intoArray(target, i);
+        }
+        for (; i < length; i++) {
+            target[i] ^= source[i];
+        }
+    }
+
+    @Override
+    public void or(long[] target, long[] source, int length) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, target, i).or(LongVector.fromArray(SPECIES, source, i)).intoArray(target, i);
+        }
+        for (; i < length; i++) {
+            target[i] |= source[i];
+        }
+    }
+}